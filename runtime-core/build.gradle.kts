@@ -10,10 +10,20 @@ java {
     withJavadocJar()
 }
 
+dependencies {
+    testImplementation(platform("org.junit:junit-bom:5.13.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
 tasks.withType<JavaCompile>().configureEach {
     options.release.set(17)
 }
 
+tasks.test {
+    useJUnitPlatform()
+}
+
 publishing {
     repositories {
         maven {
@@ -0,0 +1,79 @@
+package gg.aquatic.runtime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Relocation engine backed by ASM's {@code ClassRemapper}. ASM is loaded from the given jars in an
+ * isolated class loader and its entry points are bound once as method handles, so the per-class
+ * path needs no reflective lookups.
+ */
+final class AsmRemapper {
+    private final URLClassLoader toolLoader;
+    private final MethodHandle newClassReader;
+    private final MethodHandle newClassWriter;
+    private final MethodHandle newClassRemapper;
+    private final MethodHandle newSimpleRemapper;
+    private final MethodHandle accept;
+    private final MethodHandle toByteArray;
+
+    AsmRemapper(Path asmJar, Path asmCommonsJar) throws Exception {
+        this.toolLoader = new URLClassLoader(new URL[]{asmJar.toUri().toURL(), asmCommonsJar.toUri().toURL()}, null);
+
+        Class<?> classReaderClass = toolLoader.loadClass("org.objectweb.asm.ClassReader");
+        Class<?> classWriterClass = toolLoader.loadClass("org.objectweb.asm.ClassWriter");
+        Class<?> classVisitorClass = toolLoader.loadClass("org.objectweb.asm.ClassVisitor");
+        Class<?> remapClass = toolLoader.loadClass("org.objectweb.asm.commons.ClassRemapper");
+        Class<?> remapperClass = toolLoader.loadClass("org.objectweb.asm.commons.Remapper");
+        Class<?> simpleRemapperClass = toolLoader.loadClass("org.objectweb.asm.commons.SimpleRemapper");
+
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        this.newClassReader = lookup.findConstructor(classReaderClass, MethodType.methodType(void.class, byte[].class))
+                .asType(MethodType.methodType(Object.class, byte[].class));
+        this.newClassWriter = lookup.findConstructor(classWriterClass, MethodType.methodType(void.class, classReaderClass, int.class))
+                .asType(MethodType.methodType(Object.class, Object.class, int.class));
+        this.newClassRemapper = lookup.findConstructor(remapClass, MethodType.methodType(void.class, classVisitorClass, remapperClass))
+                .asType(MethodType.methodType(Object.class, Object.class, Object.class));
+        this.newSimpleRemapper = lookup.findConstructor(simpleRemapperClass, MethodType.methodType(void.class, Map.class))
+                .asType(MethodType.methodType(Object.class, Map.class));
+        this.accept = lookup.findVirtual(classReaderClass, "accept", MethodType.methodType(void.class, classVisitorClass, int.class))
+                .asType(MethodType.methodType(void.class, Object.class, Object.class, int.class));
+        this.toByteArray = lookup.findVirtual(classWriterClass, "toByteArray", MethodType.methodType(byte[].class))
+                .asType(MethodType.methodType(byte[].class, Object.class));
+    }
+
+    /**
+     * Creates a transformer that remaps every class and descriptor reference found in the given
+     * mapping, as looked up by ASM's {@code SimpleRemapper}.
+     */
+    ClassTransformer forMapping(Map<String, String> mapping) throws Exception {
+        Object remapper;
+        try {
+            remapper = (Object) newSimpleRemapper.invokeExact(mapping);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        return data -> remapClass(data, remapper);
+    }
+
+    private byte[] remapClass(byte[] data, Object remapper) throws Exception {
+        try {
+            Object reader = (Object) newClassReader.invokeExact(data);
+            Object writer = (Object) newClassWriter.invokeExact(reader, 0);
+            Object visitor = (Object) newClassRemapper.invokeExact(writer, remapper);
+            accept.invokeExact(reader, visitor, 0);
+            return (byte[]) toByteArray.invokeExact(writer);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
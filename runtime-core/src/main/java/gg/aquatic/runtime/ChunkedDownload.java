@@ -0,0 +1,314 @@
+package gg.aquatic.runtime;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Body handler that splits a large download across several connections. When a {@code 200}
+ * response advertises {@code Accept-Ranges: bytes} and a {@code Content-Length} of at least the
+ * threshold, the file is preallocated and divided into equal ranges. The response that is already
+ * open streams the first range, and every other range is requested in parallel with a
+ * {@code Range} request. All ranges are written into the same file with positional writes, and the
+ * body of the response is the SHA-256 of the complete file once every range has arrived. The first
+ * range is hashed while it streams; the other ranges arrive out of order and are read back from the
+ * file once they are all complete.
+ * <p>
+ * As soon as one range fails, or the body is cancelled, every other range request is cancelled and
+ * the file is closed; writes that are still in flight are dropped, so nothing touches the file once
+ * the body has failed or {@link #abort()} has returned.
+ * <p>
+ * Responses that do not qualify are streamed by a {@link DigestingBodySubscriber} as usual.
+ */
+final class ChunkedDownload implements HttpResponse.BodyHandler<String> {
+    private final HttpClient client;
+    private final HttpRequest.Builder request;
+    private final Path file;
+    private final int connections;
+    private final long threshold;
+    private final AtomicLong activity;
+    private final List<CompletableFuture<?>> ranges = new CopyOnWriteArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile RangeSubscriber first;
+    private FileChannel channel;
+    private boolean closed;
+
+    /**
+     * @param request     the request of the download, used as the template for range requests
+     * @param connections the maximum number of connections used for one file
+     * @param threshold   the minimum size in bytes of a file that is split
+     * @param activity    set to {@link System#nanoTime()} whenever any range receives data
+     */
+    ChunkedDownload(HttpClient client, HttpRequest.Builder request, Path file, int connections, long threshold, AtomicLong activity) {
+        this.client = client;
+        this.request = request;
+        this.file = file;
+        this.connections = connections;
+        this.threshold = threshold;
+        this.activity = activity;
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<String> apply(HttpResponse.ResponseInfo info) {
+        long size = info.headers().firstValueAsLong("Content-Length").orElse(-1);
+        boolean rangesAccepted = info.headers().allValues("Accept-Ranges").stream().anyMatch(value -> value.equalsIgnoreCase("bytes"));
+        if (info.statusCode() != 200 || !rangesAccepted || size < Math.max(threshold, connections)) {
+            return DigestingBodySubscriber.toFile(file).apply(info);
+        }
+
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        } catch (IOException e) {
+            close();
+            return failed(e);
+        }
+
+        long rangeSize = (size + connections - 1) / connections;
+        List<CompletableFuture<?>> parts = new ArrayList<>();
+        MessageDigest digest = Digests.sha256();
+        RangeSubscriber head = new RangeSubscriber(0, rangeSize, digest);
+        first = head;
+        parts.add(head.result);
+        for (long start = rangeSize; start < size; start += rangeSize) {
+            CompletableFuture<?> range = fetchRange(start, Math.min(start + rangeSize, size) - 1, size);
+            ranges.add(range);
+            parts.add(range);
+        }
+
+        CompletableFuture<String> body = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(parts.size());
+        // Aborting fails the other ranges too, so report the failure that came first.
+        AtomicReference<Throwable> cause = new AtomicReference<>();
+        for (CompletableFuture<?> part : parts) {
+            part.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    cause.compareAndSet(null, error);
+                    abort();
+                    body.completeExceptionally(cause.get());
+                } else if (remaining.decrementAndGet() == 0) {
+                    close();
+                    try {
+                        Digests.update(digest, file, rangeSize);
+                        body.complete(Digests.hex(digest.digest()));
+                    } catch (Exception e) {
+                        body.completeExceptionally(e);
+                    }
+                }
+            });
+        }
+        body.whenComplete((ignored, error) -> {
+            if (error != null) abort();
+        });
+        return new HttpResponse.BodySubscriber<>() {
+            @Override
+            public CompletionStage<String> getBody() {
+                return body;
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                head.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+                head.onNext(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                head.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                head.onComplete();
+            }
+        };
+    }
+
+    /**
+     * Returns the number of bytes at the start of the file that are known to be complete after the
+     * download failed, or {@code -1} if the response was not split. Ranges are requested in
+     * parallel, so only the first range is guaranteed to have been written without gaps.
+     */
+    long completedPrefix() {
+        RangeSubscriber head = first;
+        return head == null ? -1 : head.written;
+    }
+
+    /**
+     * Cancels every outstanding range request and closes the file. Once this returns nothing is
+     * written to the file anymore, so it can be truncated or reused. Calling it again has no effect.
+     */
+    void abort() {
+        ranges.forEach(range -> range.cancel(true));
+        RangeSubscriber head = first;
+        if (head != null) head.cancel();
+        close();
+    }
+
+    // Waits for writes in progress, then closes the file so that later writes are dropped.
+    private void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Writes the buffer at the given position, or returns false if the file was already closed.
+    private boolean write(ByteBuffer buffer, long position) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (closed) return false;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private CompletableFuture<?> fetchRange(long start, long end, long size) {
+        // HTTP/1.1 gives every range its own connection instead of another stream on a shared HTTP/2 connection.
+        HttpRequest rangeRequest = request.copy().version(HttpClient.Version.HTTP_1_1)
+                .header("Range", "bytes=" + start + "-" + end).build();
+        String expected = "bytes " + start + "-" + end + "/" + size;
+        return client.sendAsync(rangeRequest, info -> {
+            if (info.statusCode() != 206 || !info.headers().firstValue("Content-Range").orElse("").equals(expected)) {
+                IOException error = new IOException("Unexpected response to range request " + start + "-" + end
+                        + " of " + rangeRequest.uri() + ": " + info.statusCode());
+                return failed(error);
+            }
+            return new RangeSubscriber(start, end - start + 1, null);
+        });
+    }
+
+    /**
+     * Writes one range of the file at its position, feeding it into the digest if one is given.
+     * Once the range is complete the subscription is cancelled, which ends the response that
+     * carries the first range early.
+     */
+    private final class RangeSubscriber implements HttpResponse.BodySubscriber<Void> {
+        private final long start;
+        private final long length;
+        private final MessageDigest digest;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private volatile Flow.Subscription subscription;
+        private volatile long written;
+
+        RangeSubscriber(long start, long length, MessageDigest digest) {
+            this.start = start;
+            this.length = length;
+            this.digest = digest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (result.isDone()) return;
+            activity.set(System.nanoTime());
+            try {
+                for (ByteBuffer buffer : items) {
+                    int take = (int) Math.min(buffer.remaining(), length - written);
+                    if (digest != null) digest.update(buffer.slice().limit(take));
+                    if (!write(buffer.slice().limit(take), start + written)) {
+                        cancel();
+                        return;
+                    }
+                    written += take;
+                    if (written == length) {
+                        subscription.cancel();
+                        result.complete(null);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                subscription.cancel();
+                result.completeExceptionally(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        // Stops the range early, failing it unless it already completed.
+        void cancel() {
+            Flow.Subscription current = subscription;
+            if (current != null) current.cancel();
+            result.completeExceptionally(new IOException("Range at " + start + " was cancelled"));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (written < length) {
+                result.completeExceptionally(new IOException("Range at " + start + " ended after " + written + " of " + length + " bytes"));
+            }
+        }
+
+        @Override
+        public CompletionStage<Void> getBody() {
+            return result;
+        }
+    }
+
+    // Discards the body and fails with the given error.
+    private static <T> HttpResponse.BodySubscriber<T> failed(IOException error) {
+        return new HttpResponse.BodySubscriber<>() {
+            @Override
+            public CompletionStage<T> getBody() {
+                return CompletableFuture.failedFuture(error);
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.cancel();
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        };
+    }
+}
@@ -0,0 +1,110 @@
+package gg.aquatic.runtime;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content-addressed store of relocated class files. Entries are keyed by the SHA-256 of the
+ * original class bytes and a salt identifying the engine and mappings, so a class that is
+ * byte-identical across two versions of a dependency is only relocated once. Classes that
+ * relocation leaves unchanged are stored as empty files. Entries that were not used for
+ * {@link #MAX_AGE_DAYS} days are removed by {@link #prune()}.
+ */
+final class ClassCache {
+    static final int MAX_AGE_DAYS = 30;
+    private static final long TOUCH_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final Path dir;
+
+    ClassCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Returns a transformer that answers from the cache and stores what the given transformer
+     * produces for classes that are not cached yet.
+     *
+     * @param delegate the transformer used on cache misses
+     * @param salt     identifies everything besides the class bytes that the result depends on
+     */
+    ClassTransformer wrap(ClassTransformer delegate, String salt) {
+        byte[] saltBytes = salt.getBytes(StandardCharsets.UTF_8);
+        return classBytes -> {
+            MessageDigest digest = Digests.sha256();
+            digest.update(saltBytes);
+            digest.update((byte) 0);
+            digest.update(classBytes);
+            String key = Digests.hex(digest.digest());
+            Path file = dir.resolve(key.substring(0, 2)).resolve(key.substring(2) + ".class");
+
+            byte[] cached = read(file);
+            if (cached != null) return cached.length == 0 ? classBytes : cached;
+
+            byte[] transformed = delegate.transform(classBytes);
+            boolean unchanged = transformed == classBytes || Arrays.equals(transformed, classBytes);
+            write(file, unchanged ? new byte[0] : transformed);
+            return transformed;
+        };
+    }
+
+    /**
+     * Removes entries that were neither written nor read for {@link #MAX_AGE_DAYS} days.
+     */
+    void prune() throws IOException {
+        if (!Files.isDirectory(dir)) return;
+
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+        List<Path> stale;
+        try (var walk = Files.walk(dir, 2)) {
+            stale = walk.filter(Files::isRegularFile).filter(file -> {
+                try {
+                    return Files.getLastModifiedTime(file).toMillis() < cutoff;
+                } catch (IOException e) {
+                    return false;
+                }
+            }).toList();
+        }
+        for (Path file : stale) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Reading refreshes the modification time, which is what prune() goes by. Refreshing it at most
+    // once a day is precise enough for the expiry and keeps cache hits from writing metadata.
+    private static byte[] read(Path file) {
+        try {
+            byte[] data = Files.readAllBytes(file);
+            long now = System.currentTimeMillis();
+            if (now - Files.getLastModifiedTime(file).toMillis() > TOUCH_INTERVAL_MILLIS) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            }
+            return data;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Cache writes are best effort: a failed write only means the class is relocated again next time.
+    private static void write(Path file, byte[] data) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), "class-", ".tmp");
+            try {
+                Files.write(temp, data);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.err.println("[DependencyResolver] WARNING: Could not cache relocated class " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package gg.aquatic.runtime;
+
+/**
+ * Rewrites the class references of a single class file. A transformer is created for one set of
+ * mappings and may be called concurrently for different classes.
+ */
+interface ClassTransformer {
+
+    /**
+     * Returns the relocated class file.
+     *
+     * @param classBytes the original class file content
+     * @return the relocated class file, which may be the given array if nothing changed
+     * @throws Exception if the class file cannot be transformed
+     */
+    byte[] transform(byte[] classBytes) throws Exception;
+}
@@ -0,0 +1,295 @@
+package gg.aquatic.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Built-in relocation engine that rewrites the constant pool of a class file and copies everything
+ * after it unchanged. Every class name, descriptor, signature and annotation type of a class is
+ * stored in a {@code CONSTANT_Utf8} entry, so rewriting those entries relocates the class without
+ * parsing fields, methods or attributes.
+ * <p>
+ * A UTF-8 entry is rewritten if it is a descriptor or signature referencing a relocated class, or
+ * if it is a relocated internal name. String constants keep their original text: a {@code CONSTANT_String}
+ * whose UTF-8 entry is rewritten is pointed at a copy of the original entry appended to the pool.
+ * Annotation string values refer to UTF-8 entries directly and are relocated like names, which
+ * also keeps Kotlin metadata consistent with the relocated classes.
+ */
+final class ConstantPoolRelocator implements ClassTransformer {
+    private static final int UTF8 = 1;
+    private static final int STRING = 8;
+
+    private final UnaryOperator<String> names;
+    private final byte[][] needles;
+
+    /**
+     * @param names   maps an internal class name, returning the same instance if it is not relocated
+     * @param needles the relocated prefixes and class names in internal form and encoded as UTF-8;
+     *                UTF-8 entries containing none of them are copied without being decoded
+     */
+    ConstantPoolRelocator(UnaryOperator<String> names, byte[][] needles) {
+        this.names = names;
+        this.needles = needles;
+    }
+
+    @Override
+    public byte[] transform(byte[] classBytes) throws IOException {
+        if (classBytes.length < 10 || u16(classBytes, 0) != 0xCAFE || u16(classBytes, 2) != 0xBABE) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+
+        int count = u16(classBytes, 8);
+        int[] offsets = new int[count + 1];
+        String[] rewritten = null;
+        int pos = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = pos;
+            int tag = classBytes[pos] & 0xFF;
+            switch (tag) {
+                case UTF8 -> {
+                    int end = pos + 3 + u16(classBytes, pos + 1);
+                    if (ConstantPoolScanner.containsAny(classBytes, pos + 3, end, needles)) {
+                        String value = readUtf8(classBytes, pos);
+                        String relocated = relocate(value);
+                        if (relocated != value) {
+                            if (rewritten == null) rewritten = new String[count];
+                            rewritten[i] = relocated;
+                        }
+                    }
+                    pos = end;
+                }
+                case 7, STRING, 16, 19, 20 -> pos += 3;
+                case 15 -> pos += 4;
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> pos += 5;
+                case 5, 6 -> {
+                    pos += 9;
+                    offsets[++i] = -1;
+                }
+                default -> throw new IllegalArgumentException("Unknown constant pool tag " + tag + " at index " + i);
+            }
+        }
+        offsets[count] = pos;
+        if (rewritten == null) return classBytes;
+
+        // String constants whose text was rewritten get a copy of the original UTF-8 entry.
+        Map<Integer, Integer> originals = new HashMap<>();
+        int nextIndex = count;
+        for (int i = 1; i < count; i++) {
+            if (offsets[i] < 0 || classBytes[offsets[i]] != STRING) continue;
+            int utf8 = u16(classBytes, offsets[i] + 1);
+            if (rewritten[utf8] != null && !originals.containsKey(utf8)) {
+                originals.put(utf8, nextIndex++);
+            }
+        }
+        if (nextIndex > 0xFFFF) {
+            throw new IllegalStateException("Constant pool too large to preserve string constants");
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(classBytes.length + 256);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.write(classBytes, 0, 8);
+        out.writeShort(nextIndex);
+        for (int i = 1; i < count; i++) {
+            int start = offsets[i];
+            if (start < 0) continue;
+            int end = nextOffset(offsets, i);
+            int tag = classBytes[start];
+            if (tag == UTF8 && rewritten[i] != null) {
+                out.writeByte(UTF8);
+                out.writeUTF(rewritten[i]);
+            } else if (tag == STRING && originals.containsKey(u16(classBytes, start + 1))) {
+                out.writeByte(STRING);
+                out.writeShort(originals.get(u16(classBytes, start + 1)));
+            } else {
+                out.write(classBytes, start, end - start);
+            }
+        }
+        for (int i = 1; i < count; i++) {
+            if (!originals.containsKey(i)) continue;
+            out.write(classBytes, offsets[i], nextOffset(offsets, i) - offsets[i]);
+        }
+        out.write(classBytes, pos, classBytes.length - pos);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Relocates a single UTF-8 entry, returning the same instance if nothing in it is relocated.
+     * Descriptors and signatures are recognised by parsing them completely; anything else is
+     * treated as a possible internal name.
+     */
+    private String relocate(String value) {
+        SignatureRemapper signature = new SignatureRemapper(value, names);
+        if (signature.parse()) return signature.result();
+        return names.apply(value);
+    }
+
+    /**
+     * Parses a field or method descriptor, or a class, method or field signature, remapping the
+     * class names it references. Type arguments and inner class suffixes are walked but only the
+     * leading class name of each class type is mapped.
+     */
+    private static final class SignatureRemapper {
+        private final String value;
+        private final UnaryOperator<String> names;
+        private int pos;
+        private int copied;
+        private StringBuilder out;
+
+        SignatureRemapper(String value, UnaryOperator<String> names) {
+            this.value = value;
+            this.names = names;
+        }
+
+        /**
+         * Returns whether the whole value is a descriptor or signature.
+         */
+        boolean parse() {
+            if (peek() == '<' && !typeParameters()) return false;
+            if (peek() == '(') {
+                pos++;
+                while (peek() != ')') {
+                    if (!type()) return false;
+                }
+                pos++;
+                if (!type()) return false;
+                while (peek() == '^') {
+                    pos++;
+                    if (!type()) return false;
+                }
+            } else {
+                do {
+                    if (!type()) return false;
+                } while (pos < value.length());
+            }
+            return pos == value.length();
+        }
+
+        String result() {
+            if (out == null) return value;
+            return out.append(value, copied, value.length()).toString();
+        }
+
+        private boolean typeParameters() {
+            pos++;
+            do {
+                if (!identifier(':')) return false;
+                pos++;
+                char c = peek();
+                if ((c == 'L' || c == 'T' || c == '[') && !type()) return false;
+                while (peek() == ':') {
+                    pos++;
+                    if (!type()) return false;
+                }
+            } while (peek() != '>' && pos < value.length());
+            pos++;
+            return pos <= value.length();
+        }
+
+        private boolean type() {
+            switch (peek()) {
+                case 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z', 'V' -> {
+                    pos++;
+                    return true;
+                }
+                case '[' -> {
+                    pos++;
+                    return type();
+                }
+                case 'T' -> {
+                    pos++;
+                    if (!identifier(';')) return false;
+                    pos++;
+                    return true;
+                }
+                case 'L' -> {
+                    return classType();
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+
+        private boolean classType() {
+            int start = ++pos;
+            while (pos < value.length() && ";<.[>:".indexOf(value.charAt(pos)) < 0) pos++;
+            if (pos == start || pos == value.length()) return false;
+            map(start, pos);
+
+            while (true) {
+                char c = peek();
+                if (c == '<') {
+                    if (!typeArguments()) return false;
+                } else if (c == '.') {
+                    pos++;
+                    int inner = pos;
+                    while (pos < value.length() && ";<.[>:/".indexOf(value.charAt(pos)) < 0) pos++;
+                    if (pos == inner) return false;
+                } else if (c == ';') {
+                    pos++;
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        private boolean typeArguments() {
+            pos++;
+            if (peek() == '>') return false;
+            while (peek() != '>') {
+                char c = peek();
+                if (c == '*') {
+                    pos++;
+                    continue;
+                }
+                if (c == '+' || c == '-') pos++;
+                if (!type()) return false;
+            }
+            pos++;
+            return true;
+        }
+
+        // Advances to the given terminator, which must follow a non-empty identifier.
+        private boolean identifier(char terminator) {
+            int start = pos;
+            while (pos < value.length() && ";<.[>:/".indexOf(value.charAt(pos)) < 0) pos++;
+            return pos > start && peek() == terminator;
+        }
+
+        private void map(int start, int end) {
+            String name = value.substring(start, end);
+            String mapped = names.apply(name);
+            if (mapped == name) return;
+
+            if (out == null) out = new StringBuilder(value.length() + 16);
+            out.append(value, copied, start).append(mapped);
+            copied = end;
+        }
+
+        private char peek() {
+            return pos < value.length() ? value.charAt(pos) : 0;
+        }
+    }
+
+    private static int nextOffset(int[] offsets, int index) {
+        int next = index + 1;
+        while (offsets[next] < 0) next++;
+        return offsets[next];
+    }
+
+    private static String readUtf8(byte[] classBytes, int offset) throws IOException {
+        int length = u16(classBytes, offset + 1);
+        return new DataInputStream(new ByteArrayInputStream(classBytes, offset + 1, length + 2)).readUTF();
+    }
+
+    private static int u16(byte[] bytes, int index) {
+        return ((bytes[index] & 0xFF) << 8) | (bytes[index + 1] & 0xFF);
+    }
+}
@@ -0,0 +1,73 @@
+package gg.aquatic.runtime;
+
+/**
+ * Walks the constant pool of a class file without parsing anything else. Every class, descriptor
+ * and signature reference of a class is stored in a {@code CONSTANT_Utf8} entry, so a class whose
+ * UTF-8 entries contain none of the relocated prefixes cannot be affected by relocation and can be
+ * passed through unchanged.
+ */
+final class ConstantPoolScanner {
+    private ConstantPoolScanner() {
+    }
+
+    /**
+     * Returns whether any {@code CONSTANT_Utf8} entry of the given class contains one of the given
+     * byte sequences. Malformed class files are reported as matching so that they take the regular
+     * relocation path.
+     *
+     * @param classBytes the class file content
+     * @param needles    the prefixes to look for, in internal (slash separated) form and encoded as UTF-8
+     */
+    static boolean referencesAny(byte[] classBytes, byte[][] needles) {
+        if (needles.length == 0) return false;
+        try {
+            if (classBytes.length < 10 || u16(classBytes, 0) != 0xCAFE || u16(classBytes, 2) != 0xBABE) return true;
+
+            int count = u16(classBytes, 8);
+            int pos = 10;
+            for (int i = 1; i < count; i++) {
+                int tag = classBytes[pos] & 0xFF;
+                switch (tag) {
+                    case 1 -> {
+                        int length = u16(classBytes, pos + 1);
+                        if (containsAny(classBytes, pos + 3, pos + 3 + length, needles)) return true;
+                        pos += 3 + length;
+                    }
+                    case 7, 8, 16, 19, 20 -> pos += 3;
+                    case 15 -> pos += 4;
+                    case 3, 4, 9, 10, 11, 12, 17, 18 -> pos += 5;
+                    case 5, 6 -> {
+                        pos += 9;
+                        i++;
+                    }
+                    default -> {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return true;
+        }
+    }
+
+    static boolean containsAny(byte[] bytes, int from, int to, byte[][] needles) {
+        for (byte[] needle : needles) {
+            int last = to - needle.length;
+            byte first = needle[0];
+            outer:
+            for (int i = from; i <= last; i++) {
+                if (bytes[i] != first) continue;
+                for (int j = 1; j < needle.length; j++) {
+                    if (bytes[i + j] != needle[j]) continue outer;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int u16(byte[] bytes, int index) {
+        return ((bytes[index] & 0xFF) << 8) | (bytes[index + 1] & 0xFF);
+    }
+}
@@ -4,12 +4,23 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * DependencyManager is a utility class designed to handle the resolution and relocation
@@ -26,10 +37,20 @@ import java.util.function.Consumer;
 public class DependencyManager {
     private static final String DEFAULT_ASM_VERSION = "9.9.1";
     private final InternalResolver resolver;
+    private final Path baseDir;
     private final Path relocatedDir;
+    private final Path classesDir;
+    private final Path classCacheDir;
+    private Executor relocationExecutor;
+    private int maxParallelRelocations = 1;
+    private boolean cacheLoadedClasses;
+    private boolean useClassCache;
 
     private DependencyManager(Path baseDir) throws Exception {
+        this.baseDir = baseDir;
         this.relocatedDir = baseDir.resolve("relocated");
+        this.classesDir = baseDir.resolve("classes");
+        this.classCacheDir = baseDir.resolve("class-cache");
         Files.createDirectories(relocatedDir);
         this.resolver = new InternalResolver(baseDir);
     }
@@ -60,9 +81,170 @@ public class DependencyManager {
         return this;
     }
 
+    /**
+     * Enables concurrent dependency downloads. Dependencies are still handed to the consumer
+     * in manifest order, and all coordinates that fail to resolve are reported together.
+     *
+     * @param maxConcurrent the maximum number of dependencies downloaded at the same time
+     * @param maxPerHost    the maximum number of simultaneous requests against a single repository host
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager parallelDownloads(int maxConcurrent, int maxPerHost) {
+        resolver.setDownloadConcurrency(maxConcurrent, maxPerHost);
+        return this;
+    }
+
+    /**
+     * Downloads artifacts of at least {@code minimumSize} bytes over up to {@code connections}
+     * parallel range requests, if the repository supports them.
+     *
+     * @param connections the maximum number of connections used to download one artifact
+     * @param minimumSize the minimum size in bytes of an artifact that is split
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager chunkedDownloads(int connections, long minimumSize) {
+        resolver.setChunkedDownloads(connections, minimumSize);
+        return this;
+    }
+
+    /**
+     * Also asks the next repository for an artifact when the current one has not started
+     * responding within the given delay. The first verified download wins.
+     *
+     * @param delay how long to wait for response headers before hedging, or {@code null} to disable hedging
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager hedgeRequests(Duration delay) {
+        resolver.setHedgeDelay(delay);
+        return this;
+    }
+
+    /**
+     * Learns which repository serves which groups and asks that repository first on later runs.
+     * Repositories that answered {@code 404} for a dependency are asked last for it until
+     * {@code missTtl} has passed.
+     *
+     * @param missTtl how long a {@code 404} is remembered, or {@code null} to disable routing
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager repositoryRouting(Duration missTtl) {
+        resolver.setRepositoryRouting(missTtl);
+        return this;
+    }
+
+    /**
+     * Sets the timeouts of repository requests. See {@link InternalResolver#setTimeouts(Duration, Duration, Duration)}.
+     *
+     * @param connect the connect timeout, or {@code null}
+     * @param read    the time a request may go without receiving anything, or {@code null}
+     * @param overall the time allowed for downloading one artifact from one repository, or {@code null}
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager timeouts(Duration connect, Duration read, Duration overall) {
+        resolver.setTimeouts(connect, read, overall);
+        return this;
+    }
+
+    /**
+     * Sets how often requests that failed with {@code 429}, a {@code 5xx} status or an I/O error
+     * are retried, and the base delay of the randomised exponential backoff between retries.
+     *
+     * @param maxRetries the number of retries per artifact and repository, {@code 0} to not retry
+     * @param backoff    the base delay before the first retry, or {@code null} for none
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager retries(int maxRetries, Duration backoff) {
+        resolver.setRetries(maxRetries, backoff);
+        return this;
+    }
+
+    /**
+     * Skips a repository for the rest of a resolve once its downloads failed the given number of
+     * times in a row.
+     *
+     * @param failures the number of consecutive failures after which a repository is skipped, {@code 0} to never skip it
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager circuitBreaker(int failures) {
+        resolver.setCircuitBreaker(failures);
+        return this;
+    }
+
+    /**
+     * Additionally stores verified artifact digests as user extended attributes where the
+     * file system supports them. The digest index in the base directory is always used.
+     *
+     * @param enabled whether verified digests should also be written to extended attributes
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager useExtendedAttributes(boolean enabled) {
+        resolver.setUseExtendedAttributes(enabled);
+        return this;
+    }
+
+    /**
+     * Sets the executor used to remap the classes of a single jar concurrently during relocation,
+     * for example {@link java.util.concurrent.ForkJoinPool#commonPool()}. Relocated jars are
+     * identical to the ones produced sequentially.
+     *
+     * @param executor the executor to remap classes on, or {@code null} to remap on the calling thread
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager relocationExecutor(Executor executor) {
+        this.relocationExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Relocates up to the given number of jars at the same time. The same number of jars is scanned
+     * concurrently while preparing the class mappings. Relocated jars are still handed to the
+     * consumer in manifest order, each one as soon as it and all jars before it are ready.
+     *
+     * @param maxConcurrent the maximum number of jars relocated at the same time
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager parallelRelocation(int maxConcurrent) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("Relocation concurrency must be at least 1");
+        }
+        this.maxParallelRelocations = maxConcurrent;
+        return this;
+    }
+
+    /**
+     * Caches the classes relocated by class loaders from {@link #createClassLoader(InputStream, ClassLoader)}
+     * in the base directory, so later runs define them without relocating them again.
+     *
+     * @param enabled whether lazily relocated classes should be cached on disk
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager cacheLoadedClasses(boolean enabled) {
+        this.cacheLoadedClasses = enabled;
+        return this;
+    }
+
+    /**
+     * Keeps every relocated class in a content-addressed cache in the base directory, keyed by the
+     * original class bytes and the relocation mappings. When a dependency is updated, only the
+     * classes that actually changed between the two versions are relocated again. Entries unused
+     * for 30 days are removed.
+     *
+     * @param enabled whether relocated classes should be shared through the class cache
+     * @return the current instance of {@code DependencyManager}.
+     */
+    public DependencyManager useClassCache(boolean enabled) {
+        this.useClassCache = enabled;
+        return this;
+    }
+
     /**
      * Processes the provided manifest stream to resolve dependencies, apply relocations,
      * and invoke the given consumer for each resulting relocated JAR file.
+     * Jars that relocation would not change, or that the manifest excludes from relocation,
+     * are handed to the consumer as the original cached file instead of a relocated copy.
+     * If a previous run processed the same manifest and all of its relocated outputs are
+     * unchanged on disk, those outputs are handed to the consumer directly without
+     * verifying checksums or relocating anything.
      *
      * @param manifestStream the input stream containing the manifest data; it is assumed
      *                       to be in UTF-8 encoding and contains definitions for dependencies
@@ -75,34 +257,390 @@ public class DependencyManager {
      */
     public void process(InputStream manifestStream, Consumer<Path> jarConsumer) throws Exception {
         String manifest = new String(manifestStream.readAllBytes(), StandardCharsets.UTF_8);
-        String manifestFingerprint = sha256(manifest).substring(0, 16);
+        String fullFingerprint = stateFingerprint(manifest);
+
+        ResolutionState state = ResolutionState.read(baseDir);
+        List<Path> current = state == null ? null : state.currentOutputs(fullFingerprint);
+        if (current != null) {
+            current.forEach(jarConsumer);
+            return;
+        }
+        ResolutionState.clear(baseDir);
+
+        DependencyManifest parsed = DependencyManifest.parse(manifest);
+        resolver.warmUp(parsed);
+        Relocator relocator = createRelocator(parsed);
+
+        List<Path> downloaded = resolver.resolve(parsed);
+        RelocationSetup setup = relocationSetup(relocator, excludedJars(parsed, downloaded));
+        List<Path> outputs;
+        ExecutorService pool = maxParallelRelocations > 1 && downloaded.size() > 1
+                ? Executors.newFixedThreadPool(Math.min(maxParallelRelocations, downloaded.size()), runnable -> {
+                    Thread thread = new Thread(runnable, "runtime-relocator");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+        try {
+            List<RelocationTask> tasks = new ArrayList<>();
+            for (int i = 0; i < downloaded.size(); i++) {
+                Path jar = downloaded.get(i);
+                DependencyManifest.Dependency dependency = parsed.dependencies().get(i);
+                String key = relocationKey(jar, dependency, setup);
+                Path output = relocatedDir.resolve("relocated-" + key + "-" + jar.getFileName());
+                tasks.add(new RelocationTask(jar, output, parsed.isExcludedFromRelocation(dependency)));
+            }
+
+            outputs = relocateAll(relocator, tasks, jarConsumer, pool);
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+
+        finish(fullFingerprint, outputs);
+    }
+
+    /**
+     * Processes the provided manifest stream like {@link #process(InputStream, Consumer)}, but
+     * asynchronously and in ordered delivery. See {@link #processAsync(InputStream, Consumer, Executor, boolean)}.
+     *
+     * @param manifestStream the input stream containing the manifest data in UTF-8 encoding; it is
+     *                       read completely before this method returns
+     * @param jarConsumer    a consumer that is called with the path of each relocated JAR file
+     * @return a future completing with the jars handed to the consumer, in manifest order
+     */
+    public CompletableFuture<List<Path>> processAsync(InputStream manifestStream, Consumer<Path> jarConsumer) {
+        return processAsync(manifestStream, jarConsumer, null, true);
+    }
+
+    /**
+     * Processes the provided manifest stream asynchronously. Instead of running each phase for all
+     * dependencies before the next one starts, every dependency moves through its own pipeline:
+     * it is downloaded, hashed, relocated and handed to the consumer as soon as its own inputs are
+     * ready, while other dependencies are still downloading. Setting up the relocator, including
+     * downloading ASM when it is used, runs alongside the downloads.
+     * <p>
+     * The consumer is never called concurrently. With ordered delivery it receives jars in manifest
+     * order, each one as soon as it and all jars before it are ready; otherwise it receives each jar
+     * as soon as that jar is ready. If dependencies cannot be resolved, the returned future fails
+     * with an exception naming all of them.
+     *
+     * @param manifestStream the input stream containing the manifest data in UTF-8 encoding; it is
+     *                       read completely before this method returns
+     * @param jarConsumer    a consumer that is called with the path of each relocated JAR file
+     * @param executor       the executor hashing and relocating jars and calling the consumer, or
+     *                       {@code null} to use an internal pool sized by {@link #parallelRelocation(int)}
+     * @param ordered        whether jars are handed to the consumer in manifest order
+     * @return a future completing with the jars handed to the consumer, in manifest order
+     */
+    public CompletableFuture<List<Path>> processAsync(InputStream manifestStream, Consumer<Path> jarConsumer,
+                                                      Executor executor, boolean ordered) {
+        String manifest;
+        String fullFingerprint;
+        try {
+            manifest = new String(manifestStream.readAllBytes(), StandardCharsets.UTF_8);
+            fullFingerprint = stateFingerprint(manifest);
+
+            ResolutionState state = ResolutionState.read(baseDir);
+            List<Path> current = state == null ? null : state.currentOutputs(fullFingerprint);
+            if (current != null) {
+                current.forEach(jarConsumer);
+                return CompletableFuture.completedFuture(current);
+            }
+            ResolutionState.clear(baseDir);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        ExecutorService pool = executor == null
+                ? Executors.newFixedThreadPool(maxParallelRelocations, runnable -> {
+                    Thread thread = new Thread(runnable, "runtime-relocator");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+        Executor stages = executor != null ? executor : pool;
+
+        CompletableFuture<List<Path>> result;
+        try {
+            DependencyManifest parsed = DependencyManifest.parse(manifest);
+            resolver.warmUp(parsed);
+            CompletableFuture<Relocator> relocator = CompletableFuture.supplyAsync(unchecked(() -> createRelocator(parsed)), stages);
+            List<CompletableFuture<Path>> downloads = resolver.resolveAsync(parsed);
+            // The mappings depend on the class names of the excluded jars, so those have to be downloaded first.
+            List<CompletableFuture<Path>> excludedDownloads = new ArrayList<>();
+            for (int i = 0; i < downloads.size(); i++) {
+                if (parsed.isExcludedFromRelocation(parsed.dependencies().get(i))) excludedDownloads.add(downloads.get(i));
+            }
+            CompletableFuture<RelocationSetup> setup = CompletableFuture.allOf(excludedDownloads.toArray(CompletableFuture[]::new))
+                    .thenCombineAsync(relocator, (ignored, created) -> unchecked(() -> relocationSetup(created,
+                            excludedDownloads.stream().map(CompletableFuture::join).toList())).get(), stages);
+
+            Object consumerLock = new Object();
+            List<CompletableFuture<Path>> outputs = new ArrayList<>();
+            List<CompletableFuture<?>> deliveries = new ArrayList<>();
+            CompletableFuture<?> previousDelivery = CompletableFuture.completedFuture(null);
+            for (int i = 0; i < downloads.size(); i++) {
+                DependencyManifest.Dependency dependency = parsed.dependencies().get(i);
+                boolean excluded = parsed.isExcludedFromRelocation(dependency);
+
+                // Hashing a jar without a manifest checksum overlaps with the downloads of the others.
+                CompletableFuture<Path> output = downloads.get(i)
+                        .thenCombineAsync(setup, (jar, relocation) -> unchecked(() -> {
+                            Path target = relocatedDir.resolve("relocated-" + relocationKey(jar, dependency, relocation)
+                                    + "-" + jar.getFileName());
+                            return relocate(relocation.relocator(), new RelocationTask(jar, target, excluded));
+                        }).get(), stages);
+                outputs.add(output);
+
+                if (ordered) {
+                    previousDelivery = previousDelivery.thenCombine(output, (ignored, path) -> {
+                        jarConsumer.accept(path);
+                        return null;
+                    });
+                    deliveries.add(previousDelivery);
+                } else {
+                    deliveries.add(output.thenAccept(path -> {
+                        synchronized (consumerLock) {
+                            jarConsumer.accept(path);
+                        }
+                    }));
+                }
+            }
+
+            result = CompletableFuture.allOf(deliveries.toArray(CompletableFuture[]::new))
+                    .handle((ignored, error) -> {
+                        List<String> failed = new ArrayList<>();
+                        List<Throwable> causes = new ArrayList<>();
+                        for (int i = 0; i < downloads.size(); i++) {
+                            if (downloads.get(i).isCompletedExceptionally()) {
+                                failed.add(parsed.dependencies().get(i).coordinate());
+                                causes.add(unwrap(downloads.get(i)));
+                            }
+                        }
+                        if (!failed.isEmpty()) throw new CompletionException(InternalResolver.resolutionFailure(failed, causes));
+                        if (error != null) throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+
+                        List<Path> delivered = outputs.stream().map(CompletableFuture::join).toList();
+                        unchecked(() -> {
+                            finish(fullFingerprint, delivered);
+                            return null;
+                        }).get();
+                        return delivered;
+                    });
+        } catch (Exception e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        if (pool != null) result.whenComplete((ignored, error) -> pool.shutdown());
+        return result;
+    }
+
+    // Removes outputs of earlier runs and records the outputs of this one for the next start.
+    private void finish(String fullFingerprint, List<Path> outputs) throws Exception {
+        Set<Path> expectedOutputs = new HashSet<>(outputs);
+        cleanupStaleRelocatedOutputs(expectedOutputs);
+        if (useClassCache) new ClassCache(classCacheDir).prune();
+        resolver.prunePartFiles();
+        resolver.saveDigests();
+        ResolutionState.capture(fullFingerprint, outputs).write(baseDir);
+    }
+
+    private static Throwable unwrap(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        }
+    }
+
+    private static <T> Supplier<T> unchecked(Callable<T> callable) {
+        return () -> {
+            try {
+                return callable.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    /**
+     * Resolves the dependencies of the provided manifest and returns a class loader that serves them
+     * without relocating anything up front. Each class is relocated in memory the first time it is
+     * loaded, so classes that are never used are never transformed. Resources are served from the
+     * downloaded jars, with service files rewritten like in relocated jars. Jars that the manifest
+     * excludes from relocation are served unchanged.
+     * <p>
+     * Use this instead of {@link #process(InputStream, Consumer)} when the dependencies can be loaded
+     * through a dedicated class loader rather than as jar files on an existing class path.
+     *
+     * @param manifestStream the input stream containing the manifest data in UTF-8 encoding
+     * @param parent         the parent class loader of the returned class loader
+     * @return a class loader serving the relocated dependencies; it should be closed once it is no longer needed
+     * @throws Exception if an error occurs while reading the manifest, resolving dependencies or opening jars
+     */
+    public RelocatingClassLoader createClassLoader(InputStream manifestStream, ClassLoader parent) throws Exception {
+        String manifest = new String(manifestStream.readAllBytes(), StandardCharsets.UTF_8);
+        DependencyManifest parsed = DependencyManifest.parse(manifest);
+        resolver.warmUp(parsed);
+        Relocator relocator = createRelocator(parsed);
+        List<Path> downloaded = resolver.resolve(parsed);
+        RelocationSetup setup = relocationSetup(relocator, excludedJars(parsed, downloaded));
+
+        List<RelocatingClassLoader.Source> sources = new ArrayList<>();
+        Set<Path> cacheDirs = new HashSet<>();
+        for (int i = 0; i < downloaded.size(); i++) {
+            Path jar = downloaded.get(i);
+            DependencyManifest.Dependency dependency = parsed.dependencies().get(i);
+            boolean relocated = !parsed.isExcludedFromRelocation(dependency);
+            Path cacheDir = null;
+            if (relocated && cacheLoadedClasses) {
+                cacheDir = classesDir.resolve(relocationKey(jar, dependency, setup) + "-" + jar.getFileName());
+                cacheDirs.add(cacheDir);
+            }
+            sources.add(new RelocatingClassLoader.Source(jar, relocated, cacheDir));
+        }
+        if (cacheLoadedClasses) cleanupStaleClassCaches(cacheDirs);
+        resolver.prunePartFiles();
+        resolver.saveDigests();
+
+        return new RelocatingClassLoader(sources, setup.relocator(), parent);
+    }
+
+    private Relocator createRelocator(DependencyManifest parsed) throws Exception {
+        Relocator relocator;
+        String engine = engineId();
+        if (engine.startsWith("asm:")) {
+            String asmVersion = engine.substring(4);
+            Path asm = resolver.downloadTool("org.ow2.asm", "asm", asmVersion);
+            Path asmCommons = resolver.downloadTool("org.ow2.asm", "asm-commons", asmVersion);
+            relocator = new Relocator(asm, asmCommons);
+        } else {
+            relocator = new Relocator();
+        }
+
+        for (DependencyManifest.Relocation relocation : parsed.relocations()) {
+            if (!relocation.from().isEmpty()) relocator.addMapping(relocation.from(), relocation.to());
+        }
+        if (useClassCache) relocator.useClassCache(classCacheDir);
+        return relocator;
+    }
+
+    /**
+     * Keeps the class names of the excluded jars, which are loaded as they are, so the other jars
+     * keep referring to them by their original names. Only then are the mappings complete.
+     */
+    private RelocationSetup relocationSetup(Relocator relocator, List<Path> excludedJars) throws Exception {
+        for (Path jar : excludedJars) {
+            relocator.keepClassNames(jar);
+        }
+        return new RelocationSetup(relocator, Relocator.VERSION + "|" + engineId() + "|" + relocator.mappingFingerprint());
+    }
+
+    private static List<Path> excludedJars(DependencyManifest parsed, List<Path> downloaded) {
+        List<Path> excluded = new ArrayList<>();
+        for (int i = 0; i < downloaded.size(); i++) {
+            if (parsed.isExcludedFromRelocation(parsed.dependencies().get(i))) excluded.add(downloaded.get(i));
+        }
+        return excluded;
+    }
+
+    /**
+     * Returns the fingerprint of the resolution state: the manifest plus the relocator version and
+     * engine, which {@link #relocationSetup} also puts into every relocation key. Changing any of
+     * them makes the recorded outputs stale.
+     */
+    private String stateFingerprint(String manifest) {
+        return Digests.sha256(manifest + "\n" + Relocator.VERSION + "|" + engineId());
+    }
 
-        String asmVersion = resolveAsmVersion();
-        Path asm = resolver.downloadTool("org.ow2.asm", "asm", asmVersion);
-        Path asmCommons = resolver.downloadTool("org.ow2.asm", "asm-commons", asmVersion);
-        Relocator relocator = new Relocator(asm, asmCommons);
+    // "builtin", or "asm:" followed by the ASM version.
+    private String engineId() {
+        String engine = resolveRelocatorEngine();
+        return engine.equals("asm") ? "asm:" + resolveAsmVersion() : engine;
+    }
 
-        resolver.extractList(manifest, "relocations").forEach(relocJson -> {
-            String from = resolver.extractValue(relocJson, "from");
-            String to = resolver.extractValue(relocJson, "to");
-            if (!from.isEmpty()) relocator.addMapping(from, to);
-        });
+    // Each output is keyed by its own input and the effective mappings, so unrelated manifest
+    // changes (other dependencies, repositories, credentials) keep existing outputs valid.
+    private String relocationKey(Path jar, DependencyManifest.Dependency dependency, RelocationSetup setup) throws Exception {
+        String checksum = dependency.checksum().isEmpty() ? resolver.digest(jar) : dependency.checksum().toLowerCase();
+        return Digests.sha256(checksum + "|" + setup.key()).substring(0, 16);
+    }
 
-        List<Path> downloaded = resolver.resolve(manifest);
-        relocator.prepareClassMappings(downloaded);
-        Set<Path> expectedOutputs = new HashSet<>();
+    private List<Path> relocateAll(Relocator relocator, List<RelocationTask> tasks, Consumer<Path> jarConsumer,
+                                   ExecutorService pool) throws Exception {
+        List<Path> outputs = new ArrayList<>();
+        if (pool == null) {
+            for (RelocationTask task : tasks) {
+                Path output = relocate(relocator, task);
+                outputs.add(output);
+                jarConsumer.accept(output);
+            }
+            return outputs;
+        }
 
-        for (Path jar : downloaded) {
-            Path output = relocatedDir.resolve("relocated-" + manifestFingerprint + "-" + jar.getFileName());
-            expectedOutputs.add(output);
+        List<Future<Path>> pending = new ArrayList<>();
+        for (RelocationTask task : tasks) {
+            pending.add(pool.submit(() -> relocate(relocator, task)));
+        }
 
-            if (!Files.exists(output)) {
-                relocator.relocate(jar, output);
+        for (Future<Path> future : pending) {
+            Path output;
+            try {
+                output = future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) throw cause;
+                throw e;
             }
+            outputs.add(output);
             jarConsumer.accept(output);
         }
+        return outputs;
+    }
 
-        cleanupStaleRelocatedOutputs(expectedOutputs);
+    /**
+     * Returns the jar to hand to the consumer: the existing relocated output, the original jar if
+     * relocation is excluded or would not change it, or a freshly relocated output.
+     */
+    private Path relocate(Relocator relocator, RelocationTask task) throws Exception {
+        if (Files.exists(task.output())) return task.output();
+        if (task.excluded() || !relocator.isAffected(task.jar())) return task.jar();
+
+        relocateTo(relocator, task.jar(), task.output());
+        return task.output();
+    }
+
+    // Relocates into a temporary file first so an interrupted run never leaves a truncated output behind.
+    private void relocateTo(Relocator relocator, Path jar, Path output) throws Exception {
+        Path temp = Files.createTempFile(relocatedDir, "relocating-", ".tmp");
+        try {
+            relocator.relocate(jar, temp, relocationExecutor);
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Returns the relocation engine to use: the built-in constant pool rewriter by default, or ASM
+     * if {@code runtime.relocator} or {@code RUNTIME_RELOCATOR} is set to {@code asm}.
+     */
+    private String resolveRelocatorEngine() {
+        String engine = System.getProperty("runtime.relocator");
+        if (engine == null || engine.isBlank()) {
+            engine = System.getenv("RUNTIME_RELOCATOR");
+        }
+        if (engine == null || engine.isBlank()) {
+            return "builtin";
+        }
+
+        engine = engine.trim().toLowerCase();
+        if (!engine.equals("builtin") && !engine.equals("asm")) {
+            throw new IllegalArgumentException("Unknown relocator engine '" + engine + "', expected 'builtin' or 'asm'");
+        }
+        return engine;
     }
 
     private String resolveAsmVersion() {
@@ -136,13 +674,28 @@ public class DependencyManager {
         }
     }
 
-    private String sha256(String input) throws Exception {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-        StringBuilder hex = new StringBuilder();
-        for (byte b : hash) {
-            hex.append(String.format("%02x", b));
+    private void cleanupStaleClassCaches(Set<Path> expectedDirs) throws Exception {
+        if (!Files.isDirectory(classesDir)) {
+            return;
         }
-        return hex.toString();
+
+        List<Path> stale = new ArrayList<>();
+        try (var stream = Files.list(classesDir)) {
+            stream.filter(path -> !expectedDirs.contains(path)).forEach(stale::add);
+        }
+
+        for (Path path : stale) {
+            try (var walk = Files.walk(path)) {
+                for (Path file : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private record RelocationSetup(Relocator relocator, String key) {
+    }
+
+    private record RelocationTask(Path jar, Path output, boolean excluded) {
     }
 }
@@ -0,0 +1,78 @@
+package gg.aquatic.runtime;
+
+import java.util.List;
+
+/**
+ * Typed view of a {@code dependencies.json} manifest as generated by the runtime Gradle plugin.
+ *
+ * @param repositories the repositories dependencies are downloaded from, in lookup order
+ * @param dependencies the dependencies to resolve, in manifest order
+ * @param relocations  the package relocations applied to every resolved dependency
+ * @param relocationExcludes {@code group:artifact} or {@code group:artifact:version} notations of
+ *                           dependencies that are handed over without being relocated
+ */
+public record DependencyManifest(List<Repository> repositories, List<Dependency> dependencies, List<Relocation> relocations,
+                                 List<String> relocationExcludes) {
+
+    /**
+     * Parses the given manifest JSON in a single pass.
+     *
+     * @param json the manifest content
+     * @return the parsed manifest
+     * @throws IllegalArgumentException if the content is not a well-formed manifest
+     */
+    public static DependencyManifest parse(String json) {
+        return new ManifestParser(json).parse();
+    }
+
+    /**
+     * Returns whether the given dependency is excluded from relocation, either by its
+     * {@code group:artifact} or by its full {@code group:artifact:version} notation.
+     *
+     * @param dependency the dependency to check
+     * @return {@code true} if the dependency must not be relocated
+     */
+    public boolean isExcludedFromRelocation(Dependency dependency) {
+        return relocationExcludes.contains(dependency.group() + ":" + dependency.artifact())
+                || relocationExcludes.contains(dependency.coordinate());
+    }
+
+    /**
+     * A repository entry. Credentials may contain {@code ${VAR}} placeholders.
+     *
+     * @param url  the base URL of the repository
+     * @param user the user name or placeholder, empty if the repository is public
+     * @param pass the password or placeholder
+     */
+    public record Repository(String url, String user, String pass) {
+    }
+
+    /**
+     * A dependency entry.
+     *
+     * @param group    the group ID
+     * @param artifact the artifact ID
+     * @param version  the version
+     * @param checksum the expected SHA-256 of the jar, empty if it should not be verified
+     */
+    public record Dependency(String group, String artifact, String version, String checksum) {
+
+        /**
+         * Returns the {@code group:artifact:version} coordinate of this dependency.
+         *
+         * @return the coordinate string
+         */
+        public String coordinate() {
+            return group + ":" + artifact + ":" + version;
+        }
+    }
+
+    /**
+     * A package relocation entry, using dot notation.
+     *
+     * @param from the original package name
+     * @param to   the relocated package name
+     */
+    public record Relocation(String from, String to) {
+    }
+}
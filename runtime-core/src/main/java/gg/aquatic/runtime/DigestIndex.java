@@ -0,0 +1,177 @@
+package gg.aquatic.runtime;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which cached files have already been verified against a SHA-256 digest. Entries are
+ * keyed by path and stamped with the file size, modification time and file key, so a file that is
+ * replaced, modified or truncated no longer matches and is hashed again. When enabled, the stamp is
+ * additionally stored as a user extended attribute on file systems that support it, which survives
+ * a lost or deleted index file.
+ */
+final class DigestIndex {
+    private static final String FILE_NAME = "verified-digests.properties";
+    private static final String XATTR_NAME = "runtime.sha256";
+
+    private final Path cacheDir;
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+    private volatile boolean useXattrs;
+
+    DigestIndex(Path cacheDir) {
+        this.cacheDir = cacheDir;
+        load();
+    }
+
+    void setUseXattrs(boolean useXattrs) {
+        this.useXattrs = useXattrs;
+    }
+
+    /**
+     * Returns whether the given file was previously verified against the expected digest and has
+     * not changed since.
+     */
+    boolean isVerified(Path file, String expected) {
+        String stamp;
+        try {
+            stamp = stamp(file);
+        } catch (Exception e) {
+            return false;
+        }
+
+        String entry = entries.get(key(file));
+        if (entry != null && entry.equalsIgnoreCase(stamp + "|" + expected)) {
+            return true;
+        }
+
+        if (useXattrs) {
+            String attribute = readXattr(file);
+            if (attribute != null && attribute.equalsIgnoreCase(xattrStamp(stamp) + "|" + expected)) {
+                entries.put(key(file), stamp + "|" + expected.toLowerCase());
+                dirty = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the recorded digest of the given file if it has not changed since it was recorded,
+     * otherwise {@code null}.
+     */
+    String lookup(Path file) {
+        String entry = entries.get(key(file));
+        if (entry == null) return null;
+        try {
+            String stamp = stamp(file);
+            return entry.startsWith(stamp + "|") ? entry.substring(stamp.length() + 1) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records that the given file currently has the given digest.
+     */
+    void record(Path file, String digest) {
+        String stamp;
+        try {
+            stamp = stamp(file);
+        } catch (Exception e) {
+            return;
+        }
+
+        entries.put(key(file), stamp + "|" + digest.toLowerCase());
+        dirty = true;
+        if (useXattrs) {
+            writeXattr(file, xattrStamp(stamp) + "|" + digest.toLowerCase());
+        }
+    }
+
+    /**
+     * Persists the index if it changed, dropping entries whose files no longer exist.
+     */
+    synchronized void save() throws Exception {
+        if (!dirty) return;
+        dirty = false;
+
+        Properties properties = new Properties();
+        entries.entrySet().removeIf(entry -> !Files.exists(cacheDir.resolve(entry.getKey())));
+        properties.putAll(entries);
+
+        Files.createDirectories(cacheDir);
+        Path temp = Files.createTempFile(cacheDir, "verified-digests-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "Verified artifact digests");
+        }
+        Files.move(temp, cacheDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void load() {
+        Path file = cacheDir.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) return;
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (Exception e) {
+            return;
+        }
+        properties.forEach((key, value) -> entries.put((String) key, (String) value));
+    }
+
+    private String key(Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        Path base = cacheDir.toAbsolutePath().normalize();
+        return absolute.startsWith(base) ? base.relativize(absolute).toString().replace('\\', '/') : absolute.toString();
+    }
+
+    private static String stamp(Path file) throws Exception {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Object fileKey = attributes.fileKey();
+        return attributes.size() + "|" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                + "|" + (fileKey == null ? "" : fileKey);
+    }
+
+    // The file key identifies the inode the attribute lives on, so it is left out of the attribute value.
+    private static String xattrStamp(String stamp) {
+        return stamp.substring(0, stamp.lastIndexOf('|'));
+    }
+
+    private static String readXattr(Path file) {
+        try {
+            UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+            if (view == null || !view.list().contains(XATTR_NAME)) return null;
+
+            ByteBuffer buffer = ByteBuffer.allocate(view.size(XATTR_NAME));
+            view.read(XATTR_NAME, buffer);
+            buffer.flip();
+            return StandardCharsets.UTF_8.decode(buffer).toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void writeXattr(Path file, String value) {
+        try {
+            UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+            if (view != null) {
+                view.write(XATTR_NAME, StandardCharsets.UTF_8.encode(value));
+            }
+        } catch (Exception ignored) {
+            // Extended attributes are best effort; the index file remains authoritative.
+        }
+    }
+}
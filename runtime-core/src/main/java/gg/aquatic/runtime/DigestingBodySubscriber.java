@@ -0,0 +1,122 @@
+package gg.aquatic.runtime;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link HttpResponse.BodySubscriber} that writes the response body to a file while feeding
+ * every received buffer into a SHA-256 digest. The body of the response is the hex digest of
+ * the written bytes, so the artifact never has to be read back or buffered in memory.
+ */
+final class DigestingBodySubscriber implements HttpResponse.BodySubscriber<String> {
+    private final Path file;
+    private final OpenOption[] options;
+    private final MessageDigest digest;
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    private FileChannel channel;
+    private Flow.Subscription subscription;
+
+    DigestingBodySubscriber(Path file, MessageDigest digest, OpenOption... options) {
+        this.file = file;
+        this.digest = digest;
+        this.options = options;
+    }
+
+    /**
+     * Creates a body handler that streams successful ({@code 200}) responses into the given file
+     * and discards the body of any other response. For discarded bodies the digest is {@code null}.
+     */
+    static HttpResponse.BodyHandler<String> toFile(Path file) {
+        return toFile(file, 0, null);
+    }
+
+    /**
+     * Creates a body handler that continues a partially downloaded file. A {@code 206} response
+     * whose {@code Content-Range} starts at the given offset is appended to the file, continuing
+     * the given digest of the bytes already in it. A {@code 200} response replaces the file. The
+     * body of any other response, including a partial response for another range, is discarded.
+     *
+     * @param offset   the number of bytes already in the file, which were requested to be skipped
+     * @param existing the digest of the bytes already in the file, or {@code null} if the offset is 0
+     */
+    static HttpResponse.BodyHandler<String> toFile(Path file, long offset, MessageDigest existing) {
+        return info -> {
+            if (info.statusCode() == 200) {
+                return new DigestingBodySubscriber(file, Digests.sha256(),
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            }
+            if (info.statusCode() == 206 && offset > 0 && info.headers().firstValue("Content-Range")
+                    .filter(range -> range.startsWith("bytes " + offset + "-")).isPresent()) {
+                return new DigestingBodySubscriber(file, existing,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            return HttpResponse.BodySubscribers.replacing(null);
+        };
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        try {
+            channel = FileChannel.open(file, options);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            subscription.cancel();
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        try {
+            for (ByteBuffer buffer : items) {
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            close();
+            subscription.cancel();
+            result.completeExceptionally(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        close();
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        close();
+        if (!result.isDone()) {
+            result.complete(Digests.hex(digest.digest()));
+        }
+    }
+
+    @Override
+    public CompletionStage<String> getBody() {
+        return result;
+    }
+
+    private void close() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,77 @@
+package gg.aquatic.runtime;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Small SHA-256 helpers shared by the resolver and the dependency manager.
+ */
+final class Digests {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Digests() {
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String sha256(String input) {
+        return hex(sha256().digest(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Hashes the given file in fixed-size chunks without loading it into memory.
+     */
+    static String sha256(Path file) throws Exception {
+        MessageDigest digest = sha256();
+        update(digest, file);
+        return hex(digest.digest());
+    }
+
+    /**
+     * Feeds the content of the given file into the digest in fixed-size chunks.
+     */
+    static void update(MessageDigest digest, Path file) throws Exception {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Feeds the content of the given file from the given offset to its end into the digest.
+     */
+    static void update(MessageDigest digest, Path file, long offset) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offset);
+            while (channel.read(buffer) != -1) {
+                digest.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -6,11 +6,33 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 
 /**
  * The InternalResolver class provides utility methods for managing and resolving dependencies,
@@ -20,7 +42,36 @@ import java.util.*;
 public class InternalResolver {
     private final Path cacheDir;
     private final Map<String, String> localSecrets = new HashMap<>();
-    private final HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_OVERALL_TIMEOUT = Duration.ofMinutes(10);
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final long WARM_UP_BODY_LIMIT = 64 * 1024;
+    static final int PART_FILE_MAX_AGE_DAYS = 7;
+
+    // Shared by the HTTP client and hedged requests; idle threads exit on their own.
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "runtime-http");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile HttpClient client = newClient(DEFAULT_CONNECT_TIMEOUT);
+    private volatile Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final DigestIndex digestIndex;
+    private int maxConcurrentDownloads = 1;
+    private int maxDownloadsPerHost = 1;
+    private int chunkConnections = 1;
+    private long chunkThreshold = 16L * 1024 * 1024;
+    private Duration hedgeDelay;
+    private volatile RepositoryRoutes routes;
+    private final Map<String, CompletableFuture<Void>> warmUps = new ConcurrentHashMap<>();
+    private volatile Duration readTimeout = DEFAULT_READ_TIMEOUT;
+    private volatile Duration overallTimeout = DEFAULT_OVERALL_TIMEOUT;
+    private volatile int maxRetries = 2;
+    private volatile Duration retryBackoff = Duration.ofMillis(500);
+    private volatile int breakerThreshold = 3;
+    private final Map<String, Integer> repositoryFailures = new ConcurrentHashMap<>();
 
     /**
      * Constructs an instance of InternalResolver with the specified cache directory.
@@ -29,6 +80,18 @@ public class InternalResolver {
      */
     public InternalResolver(Path cacheDir) {
         this.cacheDir = cacheDir;
+        this.digestIndex = new DigestIndex(cacheDir);
+    }
+
+    /**
+     * Enables or disables storing verified digests as user extended attributes on the cached
+     * files, in addition to the on-disk digest index. This only has an effect on file systems
+     * that support user-defined attributes.
+     *
+     * @param enabled whether verified digests should also be written to extended attributes
+     */
+    public void setUseExtendedAttributes(boolean enabled) {
+        digestIndex.setUseXattrs(enabled);
     }
 
     /**
@@ -54,6 +117,185 @@ public class InternalResolver {
         } catch (IOException ignored) {}
     }
 
+    /**
+     * Configures how many dependencies {@link #resolve(String)} may download at the same time.
+     * A value of {@code 1} for {@code maxConcurrent} keeps the sequential behaviour. When running
+     * concurrently, {@code maxPerHost} additionally caps the number of in-flight requests against
+     * a single repository host.
+     *
+     * @param maxConcurrent the maximum number of dependencies resolved at the same time
+     * @param maxPerHost the maximum number of simultaneous requests sent to one repository host
+     */
+    public void setDownloadConcurrency(int maxConcurrent, int maxPerHost) {
+        if (maxConcurrent < 1 || maxPerHost < 1) {
+            throw new IllegalArgumentException("Download concurrency limits must be at least 1");
+        }
+        this.maxConcurrentDownloads = maxConcurrent;
+        this.maxDownloadsPerHost = maxPerHost;
+        hostPermits.clear();
+    }
+
+    /**
+     * Configures downloading large artifacts over several connections at once. An artifact is split
+     * into equal ranges, fetched in parallel and written into one preallocated file, if the
+     * repository advertises {@code Accept-Ranges: bytes} and the artifact is at least
+     * {@code minimumSize} bytes large. The file is verified as a whole once every range has arrived:
+     * the first range is hashed while it streams, and the other ranges are read back from disk, which
+     * costs reading about {@code (connections - 1) / connections} of the artifact once more. The
+     * extra connections are not counted against the per-host limit of
+     * {@link #setDownloadConcurrency(int, int)}. A value of {@code 1} for {@code connections}
+     * disables splitting, which is the default.
+     *
+     * @param connections the maximum number of connections used to download one artifact
+     * @param minimumSize the minimum size in bytes of an artifact that is split
+     */
+    public void setChunkedDownloads(int connections, long minimumSize) {
+        if (connections < 1 || minimumSize < 1) {
+            throw new IllegalArgumentException("Chunked download connections and minimum size must be at least 1");
+        }
+        this.chunkConnections = connections;
+        this.chunkThreshold = minimumSize;
+    }
+
+    /**
+     * Enables hedged requests across repositories. When the repository currently being asked for
+     * an artifact has not started responding within the given delay, the next repository in the
+     * manifest is asked as well, without cancelling the first request. The first download that
+     * passes verification is used and the remaining requests are cancelled. Only the first request
+     * for an artifact counts against the per-host limit of {@link #setDownloadConcurrency(int, int)};
+     * the hedged requests do not, since they are sent because that request is stuck, and with
+     * several repositories on one host they would otherwise wait for it. Passing {@code null}
+     * restores trying one repository after the other, which is the default.
+     *
+     * @param delay how long to wait for response headers before also asking the next repository, or {@code null}
+     */
+    public void setHedgeDelay(Duration delay) {
+        if (delay != null && delay.isNegative()) {
+            throw new IllegalArgumentException("Hedge delay must not be negative");
+        }
+        this.hedgeDelay = delay;
+    }
+
+    /**
+     * Enables learned repository routing. The resolver then keeps a table in the cache directory of
+     * which repository last served each group, and asks that repository first for artifacts of the
+     * group or its subgroups. A repository that answered {@code 404} for a coordinate is asked last
+     * for it until the given time has passed. Routing only changes the order in which repositories
+     * are asked, never which repositories are asked. Passing {@code null} disables routing, which is
+     * the default, and repositories are asked in manifest order.
+     *
+     * @param missTtl how long a {@code 404} from a repository is remembered, or {@code null} to disable routing
+     */
+    public void setRepositoryRouting(Duration missTtl) {
+        if (missTtl != null && missTtl.isNegative()) {
+            throw new IllegalArgumentException("Miss TTL must not be negative");
+        }
+        this.routes = missTtl == null ? null : new RepositoryRoutes(cacheDir, missTtl);
+    }
+
+    /**
+     * Configures the timeouts of repository requests. The connect timeout bounds establishing a
+     * connection, the read timeout bounds how long a request may go without receiving anything,
+     * both while waiting for the response headers and between parts of the response body, and
+     * the overall timeout bounds downloading one artifact from one repository, including retries
+     * and the response body. A chunked download counts as receiving as long as any of its ranges
+     * does. {@code null} disables the respective timeout. The defaults are 10 seconds, 30 seconds
+     * and 10 minutes.
+     *
+     * @param connect the connect timeout, or {@code null}
+     * @param read    the time a request may go without receiving anything, or {@code null}
+     * @param overall the time allowed for downloading one artifact from one repository, or {@code null}
+     */
+    public void setTimeouts(Duration connect, Duration read, Duration overall) {
+        for (Duration timeout : new Duration[]{connect, read, overall}) {
+            if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+                throw new IllegalArgumentException("Timeouts must be positive");
+            }
+        }
+        this.client = newClient(connect);
+        this.connectTimeout = connect;
+        this.readTimeout = read;
+        this.overallTimeout = overall;
+    }
+
+    /**
+     * Configures retries of failed repository requests. Requests answered with {@code 429} or a
+     * {@code 5xx} status, and requests that fail with an I/O error such as a timeout, are retried
+     * after a randomised exponential backoff, or after the {@code Retry-After} time sent by the
+     * repository. A partially received artifact is continued by the retry where possible. The
+     * defaults are 2 retries and a backoff of 500 milliseconds.
+     *
+     * @param maxRetries the number of retries per artifact and repository, {@code 0} to not retry
+     * @param backoff    the base delay before the first retry, doubled for every further retry, or
+     *                   {@code null} to retry without delay unless the repository asks for one
+     */
+    public void setRetries(int maxRetries, Duration backoff) {
+        if (maxRetries < 0 || backoff != null && backoff.isNegative()) {
+            throw new IllegalArgumentException("Retries and backoff must not be negative");
+        }
+        this.maxRetries = maxRetries;
+        this.retryBackoff = backoff == null ? Duration.ZERO : backoff;
+    }
+
+    /**
+     * Configures the per-repository circuit breaker. A repository whose downloads failed with an
+     * I/O error the given number of times in a row, after retries, is skipped for the rest of the
+     * current resolve. Any answer from the repository, including {@code 404}, resets its count.
+     * The default is 3.
+     *
+     * @param failures the number of consecutive failures after which a repository is skipped, {@code 0} to never skip it
+     */
+    public void setCircuitBreaker(int failures) {
+        if (failures < 0) {
+            throw new IllegalArgumentException("Circuit breaker threshold must not be negative");
+        }
+        this.breakerThreshold = failures;
+    }
+
+    /**
+     * Connects to every repository host of the manifest in the background, so DNS resolution, the
+     * TCP and TLS handshakes and HTTP/2 negotiation are done by the time the first artifact is
+     * requested. Each {@code http} or {@code https} host is sent one {@code GET} request for its
+     * repository root. {@code HEAD} is not used because the client does not reuse HTTP/1.1
+     * connections after a {@code HEAD} response; instead a body of up to 64 KiB, such as an error
+     * page or a short listing, is read so the connection can be reused, and a larger body is
+     * cancelled. The answer is ignored and failures are left to the downloads to report.
+     * Downloads to a host that is still being warmed up wait for it, at most for the connect
+     * timeout, so they can reuse its connection. Nothing is sent if every dependency of the
+     * manifest is already cached.
+     *
+     * @param manifest the parsed manifest whose repositories should be connected to
+     */
+    public void warmUp(DependencyManifest manifest) {
+        if (manifest.dependencies().stream().allMatch(dependency -> Files.exists(targetFor(dependency)))) return;
+
+        for (DependencyManifest.Repository repository : manifest.repositories()) {
+            URI uri;
+            try {
+                uri = URI.create(repository.url());
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (uri.getHost() == null || !"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) continue;
+
+            warmUps.computeIfAbsent(origin(uri), origin -> {
+                CompletableFuture<Void> warmUp;
+                try {
+                    HttpRequest.Builder builder = HttpRequest.newBuilder(uri).GET();
+                    Duration readTimeout = this.readTimeout;
+                    if (readTimeout != null) builder.timeout(readTimeout);
+                    warmUp = client.sendAsync(builder.build(), info -> discarding(WARM_UP_BODY_LIMIT))
+                            .handle((response, error) -> null);
+                } catch (RuntimeException e) {
+                    // The repository is reported by the downloads, if it is ever asked for anything.
+                    return null;
+                }
+                warmUp.whenComplete((ignored, error) -> warmUps.remove(origin, warmUp));
+                return warmUp;
+            });
+        }
+    }
+
     /**
      * Downloads a specific version of a tool specified by its group, artifact, and version
      * from the Maven Central Repository. If the tool is already cached, it returns the cached
@@ -75,8 +317,9 @@ public class InternalResolver {
         String url = String.format("https://repo1.maven.org/maven2/%s/%s/%s/%s-%s.jar",
                 group.replace('.', '/'), artifact, version, artifact, version);
 
-        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).GET().build();
-        HttpResponse<Path> response = client.send(request, HttpResponse.BodyHandlers.ofFile(target));
+        HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create(url)).GET();
+        if (readTimeout != null) builder.timeout(readTimeout);
+        HttpResponse<Path> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofFile(target));
 
         if (response.statusCode() != 200) {
             Files.deleteIfExists(target);
@@ -110,65 +353,545 @@ public class InternalResolver {
      * Resolves the dependencies specified in the given manifest content by downloading them
      * from the listed repositories. The method verifies the downloaded files using provided
      * checksums and avoids re-downloading files that are already cached and verified.
+     * Cached files that were verified before and have not changed since are not hashed again.
+     * When download concurrency is enabled, dependencies are fetched in parallel and every
+     * coordinate that fails is reported together in a single exception.
      *
      * @param manifestContent the JSON content of the manifest containing dependencies and repositories
-     * @return a list of paths to the resolved and cached dependency files
+     * @return a list of paths to the resolved and cached dependency files, in manifest order
      * @throws Exception if any dependency cannot be resolved or if an error occurs during processing
      */
     public List<Path> resolve(String manifestContent) throws Exception {
-        List<Path> resolved = new ArrayList<>();
-        List<String> depsJson = extractList(manifestContent, "dependencies");
-        List<String> reposJson = extractList(manifestContent, "repositories");
-
-        for (String depJson : depsJson) {
-            String group = extractValue(depJson, "group");
-            String artifact = extractValue(depJson, "artifact");
-            String version = extractValue(depJson, "version");
-            String checksum = extractValue(depJson, "checksum");
-
-            // Store downloads in a versioned subfolder to avoid conflicts
-            Path target = cacheDir.resolve("downloads").resolve(group.replace('.', '/'))
-                    .resolve(artifact + "-" + version + ".jar");
-            Files.createDirectories(target.getParent());
-
-            boolean needsDownload = true;
-            if (Files.exists(target)) {
-                if (checksum == null || checksum.isEmpty()) {
-                    needsDownload = false;
-                } else if (verify(target, checksum)) {
-                    needsDownload = false;
-                } else {
-                    Files.deleteIfExists(target);
+        return resolve(DependencyManifest.parse(manifestContent));
+    }
+
+    /**
+     * Resolves the dependencies of an already parsed manifest. See {@link #resolve(String)}.
+     *
+     * @param manifest the parsed manifest containing dependencies and repositories
+     * @return a list of paths to the resolved and cached dependency files, in manifest order
+     * @throws Exception if any dependency cannot be resolved or if an error occurs during processing
+     */
+    public List<Path> resolve(DependencyManifest manifest) throws Exception {
+        List<DependencyManifest.Dependency> dependencies = manifest.dependencies();
+        List<DependencyManifest.Repository> repositories = manifest.repositories();
+        repositoryFailures.clear();
+
+        try {
+            if (maxConcurrentDownloads > 1 && dependencies.size() > 1) {
+                return resolveConcurrently(dependencies, repositories);
+            }
+
+            List<Path> resolved = new ArrayList<>();
+            for (DependencyManifest.Dependency dependency : dependencies) {
+                resolved.add(resolveDependency(dependency, repositories));
+            }
+            return resolved;
+        } finally {
+            digestIndex.save();
+            saveRoutes();
+        }
+    }
+
+    private List<Path> resolveConcurrently(List<DependencyManifest.Dependency> dependencies,
+                                           List<DependencyManifest.Repository> repositories) throws Exception {
+        int threads = Math.min(maxConcurrentDownloads, dependencies.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "runtime-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (DependencyManifest.Dependency dependency : dependencies) {
+                futures.add(executor.submit(() -> resolveDependency(dependency, repositories)));
+            }
+
+            List<Path> resolved = new ArrayList<>();
+            List<String> failed = new ArrayList<>();
+            List<Throwable> causes = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    resolved.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    failed.add(dependencies.get(i).coordinate());
+                    causes.add(e.getCause());
                 }
             }
 
-            if (needsDownload) {
-                if (!tryDownloadFromRepos(reposJson, group, artifact, version, checksum, target)) {
-                    throw new RuntimeException("Could not resolve " + artifact + " from any repository");
+            if (!failed.isEmpty()) {
+                throw resolutionFailure(failed, causes);
+            }
+            return resolved;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts resolving the dependencies of an already parsed manifest in the background and returns
+     * one future per dependency, in manifest order, so each dependency can be used as soon as it is
+     * available. Up to the configured download concurrency is fetched at the same time. The digest
+     * index is saved once every dependency has completed.
+     *
+     * @param manifest the parsed manifest containing dependencies and repositories
+     * @return futures completing with the paths of the resolved and cached dependency files
+     */
+    public List<CompletableFuture<Path>> resolveAsync(DependencyManifest manifest) {
+        List<DependencyManifest.Dependency> dependencies = manifest.dependencies();
+        List<DependencyManifest.Repository> repositories = manifest.repositories();
+        if (dependencies.isEmpty()) return List.of();
+        repositoryFailures.clear();
+
+        int threads = Math.min(maxConcurrentDownloads, dependencies.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "runtime-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<CompletableFuture<Path>> futures = new ArrayList<>();
+        for (DependencyManifest.Dependency dependency : dependencies) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return resolveDependency(dependency, repositories);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
                 }
+            }, executor));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).whenComplete((ignored, error) -> {
+            executor.shutdown();
+            try {
+                digestIndex.save();
+            } catch (Exception e) {
+                System.err.println("[DependencyResolver] WARNING: Could not save digest index: " + e.getMessage());
+            }
+            saveRoutes();
+        });
+        return futures;
+    }
+
+    // The routing table is only an optimisation, so failing to save it does not fail the resolve.
+    private void saveRoutes() {
+        RepositoryRoutes routes = this.routes;
+        if (routes == null) return;
+        try {
+            routes.save();
+        } catch (Exception e) {
+            System.err.println("[DependencyResolver] WARNING: Could not save repository routes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the exception reporting every coordinate that could not be resolved, with the
+     * individual failures attached as suppressed exceptions.
+     */
+    static RuntimeException resolutionFailure(List<String> coordinates, List<Throwable> causes) {
+        RuntimeException error = new RuntimeException("Could not resolve " + coordinates.size()
+                + " dependencies: " + String.join(", ", coordinates));
+        causes.forEach(error::addSuppressed);
+        return error;
+    }
+
+    private Path resolveDependency(DependencyManifest.Dependency dependency, List<DependencyManifest.Repository> repositories) throws Exception {
+        String group = dependency.group();
+        String artifact = dependency.artifact();
+        String version = dependency.version();
+        String checksum = dependency.checksum();
+
+        Path target = targetFor(dependency);
+        Files.createDirectories(target.getParent());
+
+        boolean needsDownload = true;
+        if (Files.exists(target)) {
+            if (checksum == null || checksum.isEmpty()) {
+                needsDownload = false;
+            } else if (verify(target, checksum)) {
+                needsDownload = false;
+            } else {
+                Files.deleteIfExists(target);
+            }
+        }
+
+        if (needsDownload) {
+            if (!tryDownloadFromRepos(repositories, group, artifact, version, checksum, target)) {
+                throw new RuntimeException("Could not resolve " + artifact + " from any repository");
             }
-            resolved.add(target);
         }
-        return resolved;
+        return target;
+    }
+
+    // Store downloads in a versioned subfolder to avoid conflicts
+    private Path targetFor(DependencyManifest.Dependency dependency) {
+        return cacheDir.resolve("downloads").resolve(dependency.group().replace('.', '/'))
+                .resolve(dependency.artifact() + "-" + dependency.version() + ".jar");
     }
 
-    private boolean tryDownloadFromRepos(List<String> repos, String g, String a, String v, String checksum, Path target) throws Exception {
-        for (String repoJson : repos) {
-            if (download(extractValue(repoJson, "url"), g, a, v, target,
-                    extractValue(repoJson, "user"), extractValue(repoJson, "pass"), checksum)) {
+    private boolean tryDownloadFromRepos(List<DependencyManifest.Repository> repos, String g, String a, String v, String checksum, Path target) throws Exception {
+        RepositoryRoutes routes = this.routes;
+        if (routes != null) repos = routes.order(repos, g, g + ":" + a + ":" + v);
+        List<DependencyManifest.Repository> available = repos.stream().filter(repo -> !isTripped(repo)).toList();
+        if (available.isEmpty() && !repos.isEmpty()) {
+            throw new IOException("Every repository failed " + breakerThreshold + " times in a row and is skipped for the rest of this resolve");
+        }
+        if (hedgeDelay != null && available.size() > 1) {
+            return hedgedDownload(available, g, a, v, checksum, target);
+        }
+
+        List<Exception> errors = new ArrayList<>();
+        for (DependencyManifest.Repository repo : available) {
+            Path partFile = partFile(target, repo.url());
+            int[] status = {0};
+            String digest;
+            try {
+                digest = download(repo.url(), g, a, v, partFile, repo.user(), repo.pass(), checksum, true, code -> status[0] = code);
+            } catch (IOException e) {
+                repositoryFailed(repo, e);
+                errors.add(e);
+                continue;
+            }
+            repositoryAnswered(repo);
+            if (digest != null) {
+                install(partFile, target, digest);
+                if (routes != null) routes.served(g, repo.url());
                 return true;
             }
+            recordMiss(repo, status[0], g, a, v);
+        }
+        throwFirst(errors);
+        return false;
+    }
+
+    /**
+     * Tries the repositories in order, but sends the request to the next repository as well when
+     * the latest one has not started responding within the hedge delay. Every attempt downloads
+     * into its own part file. The first verified download is installed and the other attempts are
+     * cancelled. Failures of single attempts only fail the download if no repository has it.
+     */
+    private boolean hedgedDownload(List<DependencyManifest.Repository> repos, String g, String a, String v, String checksum, Path target) throws Exception {
+        long hedgeNanos = hedgeDelay.toNanos();
+        BlockingQueue<HedgedAttempt> completed = new LinkedBlockingQueue<>();
+        List<HedgedAttempt> attempts = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
+        HedgedAttempt winner = null;
+        int running = 0;
+        try {
+            while (winner == null) {
+                HedgedAttempt latest = attempts.isEmpty() ? null : attempts.get(attempts.size() - 1);
+                boolean more = attempts.size() < repos.size();
+                if (more && (running == 0 || latest.status == 0 && System.nanoTime() - latest.started >= hedgeNanos)) {
+                    DependencyManifest.Repository repo = repos.get(attempts.size());
+                    latest = new HedgedAttempt(repo, partFile(target, repo.url()));
+                    HedgedAttempt attempt = latest;
+                    boolean limited = attempts.isEmpty();
+                    attempt.future = executor.submit(() -> {
+                        try {
+                            attempt.digest = download(repo.url(), g, a, v, attempt.part, repo.user(), repo.pass(), checksum,
+                                    limited, code -> attempt.status = code);
+                        } catch (Exception e) {
+                            attempt.error = e;
+                        } finally {
+                            attempt.finish();
+                            completed.add(attempt);
+                        }
+                    });
+                    attempts.add(attempt);
+                    running++;
+                    more = attempts.size() < repos.size();
+                }
+                if (running == 0) break;
+
+                HedgedAttempt done = more && latest.status == 0
+                        ? completed.poll(Math.max(0, latest.started + hedgeNanos - System.nanoTime()), TimeUnit.NANOSECONDS)
+                        : completed.take();
+                if (done == null) continue;
+                running--;
+                if (done.error != null) {
+                    if (done.error instanceof IOException e) repositoryFailed(done.repo, e);
+                    errors.add(done.error);
+                    continue;
+                }
+                repositoryAnswered(done.repo);
+                if (done.digest != null) {
+                    winner = done;
+                } else {
+                    recordMiss(done.repo, done.status, g, a, v);
+                }
+            }
+        } finally {
+            for (HedgedAttempt attempt : attempts) {
+                if (attempt != winner) attempt.cancel();
+            }
+        }
+
+        if (winner != null) {
+            install(winner.part, target, winner.digest);
+            if (routes != null) routes.served(g, winner.repo.url());
+            return true;
         }
+        throwFirst(errors);
         return false;
     }
 
-    private boolean download(String repo, String g, String a, String v, Path target, String user, String pass, String checksum) throws Exception {
+    private static void throwFirst(List<Exception> errors) throws Exception {
+        if (errors.isEmpty()) return;
+        Exception error = errors.get(0);
+        errors.subList(1, errors.size()).forEach(error::addSuppressed);
+        throw error;
+    }
+
+    private boolean isTripped(DependencyManifest.Repository repo) {
+        int threshold = breakerThreshold;
+        return threshold > 0 && repositoryFailures.getOrDefault(repo.url(), 0) >= threshold;
+    }
+
+    private void repositoryAnswered(DependencyManifest.Repository repo) {
+        repositoryFailures.remove(repo.url());
+    }
+
+    private void repositoryFailed(DependencyManifest.Repository repo, IOException error) {
+        int failures = repositoryFailures.merge(repo.url(), 1, Integer::sum);
+        if (failures == breakerThreshold) {
+            System.err.println("[DependencyResolver] WARNING: Skipping repository " + repo.url() + " for the rest of this resolve after "
+                    + failures + " consecutive failures, the last one being: " + error);
+        }
+    }
+
+    /**
+     * One request of a hedged download. The part file of an attempt that is cancelled is deleted
+     * by whichever side sees the other one finish first.
+     */
+    private static final class HedgedAttempt {
+        final DependencyManifest.Repository repo;
+        final Path part;
+        final long started = System.nanoTime();
+        volatile int status;
+        volatile String digest;
+        volatile Exception error;
+        Future<?> future;
+        private boolean finished;
+        private boolean cancelled;
+
+        HedgedAttempt(DependencyManifest.Repository repo, Path part) {
+            this.repo = repo;
+            this.part = part;
+        }
+
+        synchronized void finish() {
+            finished = true;
+            if (cancelled) deleteQuietly();
+        }
+
+        void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                if (finished) deleteQuietly();
+            }
+            future.cancel(true);
+        }
+
+        private void deleteQuietly() {
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // Only answers saying the artifact does not exist are remembered, not errors that may go away.
+    private void recordMiss(DependencyManifest.Repository repo, int status, String g, String a, String v) {
+        RepositoryRoutes routes = this.routes;
+        if (routes != null && (status == 404 || status == 410)) routes.missed(repo.url(), g + ":" + a + ":" + v);
+    }
+
+    // Each repository downloads into its own part file, so a partial download is only ever continued
+    // from the repository it came from, and concurrent attempts never share a file.
+    static Path partFile(Path target, String repository) {
+        return target.resolveSibling(target.getFileName() + "." + Digests.sha256(repository).substring(0, 8) + ".part");
+    }
+
+    // Discards a body of up to the given size and cancels the response once more arrives.
+    private static HttpResponse.BodySubscriber<Void> discarding(long limit) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        return new HttpResponse.BodySubscriber<>() {
+            private Flow.Subscription subscription;
+            private long received;
+
+            @Override
+            public CompletionStage<Void> getBody() {
+                return result;
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> items) {
+                for (ByteBuffer item : items) received += item.remaining();
+                if (received > limit) {
+                    subscription.cancel();
+                    result.complete(null);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(null);
+            }
+        };
+    }
+
+    private static String origin(URI uri) {
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+
+    // HTTP/2 multiplexes concurrent requests to a host over one connection where the server supports it.
+    private HttpClient newClient(Duration connectTimeout) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.ALWAYS)
+                .executor(executor);
+        if (connectTimeout != null) builder.connectTimeout(connectTimeout);
+        return builder.build();
+    }
+
+    /**
+     * Sends the request, giving up once the deadline has passed. Giving up cancels the exchange,
+     * so a response body that stalls does not keep the connection open.
+     */
+    /**
+     * Sends the request and waits for its body, failing once the deadline has passed or nothing was
+     * received for the read timeout. The body subscriber, and any range requests it sends, record
+     * what they receive in the given activity timestamp.
+     */
+    private HttpResponse<String> send(HttpRequest request, HttpResponse.BodyHandler<String> handler, long deadline,
+                                      AtomicLong activity) throws Exception {
+        Duration readTimeout = this.readTimeout;
+        activity.set(System.nanoTime());
+        CompletableFuture<HttpResponse<String>> future = client.sendAsync(request, info -> {
+            activity.set(System.nanoTime());
+            return recordingActivity(handler.apply(info), activity);
+        });
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                long wait = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - now;
+                if (wait <= 0) {
+                    future.cancel(true);
+                    throw new HttpTimeoutException("Download of " + request.uri() + " did not complete within " + overallTimeout);
+                }
+                if (readTimeout != null) {
+                    long idle = activity.get() + readTimeout.toNanos() - now;
+                    if (idle <= 0) {
+                        future.cancel(true);
+                        throw new HttpTimeoutException("Download of " + request.uri() + " received nothing for " + readTimeout);
+                    }
+                    wait = Math.min(wait, idle);
+                }
+                try {
+                    return wait == Long.MAX_VALUE ? future.get() : future.get(wait, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException ignored) {
+                    // Check the deadline and the activity again.
+                }
+            }
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    // Records the time of every part of the body in the activity timestamp.
+    private static <T> HttpResponse.BodySubscriber<T> recordingActivity(HttpResponse.BodySubscriber<T> subscriber, AtomicLong activity) {
+        return new HttpResponse.BodySubscriber<>() {
+            @Override
+            public CompletionStage<T> getBody() {
+                return subscriber.getBody();
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+                activity.set(System.nanoTime());
+                subscriber.onNext(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                subscriber.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        };
+    }
+
+    /**
+     * Waits before the next retry, using the server's {@code Retry-After} time if it sent one and
+     * otherwise an exponential backoff with random jitter. Returns {@code false} without waiting if
+     * the retry could not start before the deadline.
+     */
+    private boolean backOff(int retry, long retryAfterMillis, long deadline) throws InterruptedException {
+        long delay = retryAfterMillis;
+        if (delay < 0) {
+            long cap = Math.min(MAX_BACKOFF_MILLIS, retryBackoff.toMillis() << Math.min(retry, 16));
+            delay = cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+        }
+        if (deadline != Long.MAX_VALUE && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) >= deadline) return false;
+        Thread.sleep(delay);
+        return true;
+    }
+
+    // Only the delta-seconds form is supported; dates are treated as absent.
+    private static long retryAfter(HttpResponse<?> response) {
+        try {
+            return response.headers().firstValue("Retry-After").map(value -> Math.min(MAX_BACKOFF_MILLIS, Long.parseLong(value.trim()) * 1000)).orElse(-1L);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void install(Path partFile, Path target, String digest) throws Exception {
+        Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING);
+        digestIndex.record(target, digest);
+    }
+
+    /**
+     * Downloads the artifact from one repository into the given part file, continuing a previous
+     * partial download where possible.
+     *
+     * @param limited    whether the request waits for a permit of the per-host limit
+     * @param onResponse called with the status code once the response headers have arrived, or {@code null}
+     * @return the digest of the verified part file, or {@code null} if the repository does not have the artifact
+     */
+    private String download(String repo, String g, String a, String v, Path partFile, String user, String pass, String checksum,
+                            boolean limited, IntConsumer onResponse) throws Exception {
         String baseUrl = repo.endsWith("/") ? repo.substring(0, repo.length() - 1) : repo;
         String url = String.format("%s/%s/%s/%s/%s-%s.jar",
                 baseUrl,
                 g.replace('.', '/'), a, v, a, v);
 
         HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create(url)).GET();
+        Duration readTimeout = this.readTimeout;
+        if (readTimeout != null) builder.timeout(readTimeout);
 
         String actualUser = resolveSecret(user);
         String actualPass = resolveSecret(pass);
@@ -178,57 +901,176 @@ public class InternalResolver {
             builder.header("Authorization", "Basic " + auth);
         }
 
-        Path tempFile = Files.createTempFile(target.getParent(), "download-", ".tmp");
-        HttpResponse<Path> resp = client.send(builder.build(), HttpResponse.BodyHandlers.ofFile(tempFile));
+        // Partial downloads are only resumed if the checksum can tell whether the pieces fit together.
+        boolean resumable = checksum != null && !checksum.isEmpty();
+        if (!resumable) Files.deleteIfExists(partFile);
 
-        if (resp.statusCode() != 200) {
-            Files.deleteIfExists(tempFile);
-            return false;
+        // Racing a warm-up would only open a second connection to the same host, but a warm-up
+        // that takes longer than connecting would is not worth waiting for.
+        CompletableFuture<Void> warmUp = warmUps.get(origin(URI.create(url)));
+        if (warmUp != null) {
+            Duration connectTimeout = this.connectTimeout;
+            try {
+                warmUp.get((connectTimeout == null ? DEFAULT_CONNECT_TIMEOUT : connectTimeout).toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignored) {
+            }
         }
 
-        if (checksum != null && !checksum.isEmpty() && !verify(tempFile, checksum)) {
-            Files.deleteIfExists(tempFile);
-            return false;
-        }
+        Semaphore permits = !limited ? null : hostPermits.computeIfAbsent(String.valueOf(URI.create(url).getHost()),
+                host -> new Semaphore(maxDownloadsPerHost));
+        boolean chunking = chunkConnections > 1;
+        Duration overallTimeout = this.overallTimeout;
+        long deadline = overallTimeout == null ? Long.MAX_VALUE : System.nanoTime() + overallTimeout.toNanos();
+        int retries = 0;
+        while (true) {
+            long offset = resumable && Files.isRegularFile(partFile) ? Files.size(partFile) : 0;
+            HttpRequest.Builder request = builder.copy();
+            MessageDigest existing = null;
+            if (offset > 0) {
+                existing = Digests.sha256();
+                Digests.update(existing, partFile);
+                // A previous attempt may have received everything but stopped before moving the file.
+                String complete = Digests.hex(((MessageDigest) existing.clone()).digest());
+                if (checksum.equalsIgnoreCase(complete)) return complete;
+                request.header("Range", "bytes=" + offset + "-");
+            }
 
-        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
-        return true;
-    }
+            AtomicLong activity = new AtomicLong();
+            ChunkedDownload chunked = offset == 0 && chunking
+                    ? new ChunkedDownload(client, request, partFile, chunkConnections, chunkThreshold, activity) : null;
+            HttpResponse.BodyHandler<String> handler = chunked != null ? chunked : DigestingBodySubscriber.toFile(partFile, offset, existing);
+            HttpResponse<String> resp = null;
+            IOException failure = null;
+            if (permits != null) permits.acquire();
+            try {
+                resp = send(request.build(), onResponse == null ? handler : info -> {
+                    onResponse.accept(info.statusCode());
+                    return handler.apply(info);
+                }, deadline, activity);
+            } catch (IOException e) {
+                failure = e;
+            } catch (Exception e) {
+                if (chunked != null) chunked.abort();
+                if (!resumable) Files.deleteIfExists(partFile);
+                throw e;
+            } finally {
+                if (permits != null) permits.release();
+            }
 
-    private boolean verify(Path file, String expected) throws Exception {
-        if (expected == null || expected.isEmpty()) return true;
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(Files.readAllBytes(file));
-        StringBuilder hex = new StringBuilder();
-        for (byte b : hash) hex.append(String.format("%02x", b));
-        return hex.toString().equalsIgnoreCase(expected);
-    }
+            if (failure != null) {
+                // Make sure no range is still writing before the part file is truncated or removed.
+                if (chunked != null) chunked.abort();
+                if (chunked != null && chunked.completedPrefix() >= 0 && System.nanoTime() < deadline) {
+                    // Fall back to a single connection, continuing after the first range if possible.
+                    System.err.println("[DependencyResolver] WARNING: Chunked download of " + url + " failed, continuing with a single connection: " + failure.getMessage());
+                    if (resumable) {
+                        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.WRITE)) {
+                            channel.truncate(chunked.completedPrefix());
+                        }
+                    } else {
+                        Files.deleteIfExists(partFile);
+                    }
+                    chunking = false;
+                    continue;
+                }
+                // Keep what was received so the next attempt can continue from there.
+                if (!resumable) Files.deleteIfExists(partFile);
+                if (retries < maxRetries && backOff(retries++, -1, deadline)) continue;
+                throw failure;
+            }
+
+            int status = resp.statusCode();
+            if (status == 429 || status >= 500) {
+                if (!resumable) Files.deleteIfExists(partFile);
+                if (retries < maxRetries && backOff(retries++, retryAfter(resp), deadline)) continue;
+                throw new IOException(url + " answered with status " + status);
+            }
 
-    String extractValue(String json, String key) {
-        int idx = json.indexOf("\"" + key + "\":");
-        if (idx == -1) return "";
+            boolean resumed = resp.statusCode() == 206 && resp.body() != null;
+            if (offset > 0 && (resp.statusCode() == 416 || resp.statusCode() == 206 && !resumed)) {
+                // The server cannot continue the partial file, so start over.
+                Files.deleteIfExists(partFile);
+                continue;
+            }
+            if (resp.statusCode() != 200 && !resumed) {
+                if (!resumable) Files.deleteIfExists(partFile);
+                return null;
+            }
 
-        int start = json.indexOf("\"", idx + key.length() + 2) + 1;
-        int end = json.indexOf("\"", start);
-        if (start <= 0 || end <= 0) return "";
+            if (resumable && !checksum.equalsIgnoreCase(resp.body())) {
+                Files.deleteIfExists(partFile);
+                if (resumed) {
+                    System.err.println("[DependencyResolver] WARNING: Resumed download of " + url + " does not match its checksum, downloading it again");
+                    continue;
+                }
+                return null;
+            }
+            return resp.body();
+        }
+    }
+
+    /**
+     * Returns the SHA-256 digest of the given file. Digests of files that were verified before and
+     * have not changed since are taken from the digest index instead of hashing the file again.
+     * New digests are only recorded in memory; {@link #saveDigests()} persists them.
+     *
+     * @param file the file to compute the digest of
+     * @return the lowercase hex SHA-256 digest of the file
+     * @throws Exception if the file cannot be read
+     */
+    public String digest(Path file) throws Exception {
+        String known = digestIndex.lookup(file);
+        if (known != null) return known;
 
-        return json.substring(start, end);
+        String actual = Digests.sha256(file);
+        digestIndex.record(file, actual);
+        return actual;
     }
 
-    List<String> extractList(String json, String key) {
-        List<String> list = new ArrayList<>();
-        int startIdx = json.indexOf("\"" + key + "\":[");
-        if (startIdx == -1) return list;
+    /**
+     * Persists the digests recorded since the index was last saved. Resolving saves the index when
+     * it completes, so this is only needed for digests computed with {@link #digest} afterwards.
+     *
+     * @throws Exception if the index cannot be written
+     */
+    public void saveDigests() throws Exception {
+        digestIndex.save();
+    }
 
-        int endIdx = json.indexOf("]", startIdx);
-        String content = json.substring(startIdx + key.length() + 4, endIdx);
+    /**
+     * Removes partial downloads that were not continued for {@link #PART_FILE_MAX_AGE_DAYS} days,
+     * for example because the dependency was dropped from the manifest or the repository that
+     * served it is no longer used.
+     *
+     * @throws IOException if the download cache cannot be walked
+     */
+    public void prunePartFiles() throws IOException {
+        Path downloads = cacheDir.resolve("downloads");
+        if (!Files.isDirectory(downloads)) return;
 
-        String[] parts = content.split("\\},\\{");
-        for (String p : parts) {
-            String sanitized = p.startsWith("{") ? p : "{" + p;
-            sanitized = sanitized.endsWith("}") ? sanitized : sanitized + "}";
-            list.add(sanitized);
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(PART_FILE_MAX_AGE_DAYS);
+        List<Path> stale;
+        try (var walk = Files.walk(downloads)) {
+            stale = walk.filter(file -> file.getFileName().toString().endsWith(".part") && Files.isRegularFile(file)).filter(file -> {
+                try {
+                    return Files.getLastModifiedTime(file).toMillis() < cutoff;
+                } catch (IOException e) {
+                    return false;
+                }
+            }).toList();
         }
-        return list;
+        for (Path file : stale) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private boolean verify(Path file, String expected) throws Exception {
+        if (expected == null || expected.isEmpty()) return true;
+        if (digestIndex.isVerified(file, expected)) return true;
+
+        String actual = Digests.sha256(file);
+        if (!actual.equalsIgnoreCase(expected)) return false;
+        digestIndex.record(file, actual);
+        return true;
     }
 }
@@ -0,0 +1,223 @@
+package gg.aquatic.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal single-pass JSON reader for dependency manifests. It walks the input once, reads only
+ * the keys it knows about into {@link DependencyManifest} records and skips everything else,
+ * including nested objects and arrays. Whitespace between tokens is allowed anywhere.
+ */
+final class ManifestParser {
+    private final String json;
+    private final int length;
+    private int pos;
+
+    ManifestParser(String json) {
+        this.json = json;
+        this.length = json.length();
+    }
+
+    DependencyManifest parse() {
+        List<DependencyManifest.Repository> repositories = new ArrayList<>();
+        List<DependencyManifest.Dependency> dependencies = new ArrayList<>();
+        List<DependencyManifest.Relocation> relocations = new ArrayList<>();
+        List<String> relocationExcludes = new ArrayList<>();
+
+        expect('{');
+        if (!tryConsume('}')) {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "repositories" -> readArray(() -> repositories.add(readRepository()));
+                    case "dependencies" -> readArray(() -> dependencies.add(readDependency()));
+                    case "relocations" -> readArray(() -> relocations.add(readRelocation()));
+                    case "relocationExcludes" -> readArray(() -> relocationExcludes.add(readText()));
+                    default -> skipValue();
+                }
+            } while (tryConsume(','));
+            expect('}');
+        }
+
+        skipWhitespace();
+        if (pos != length) throw error("unexpected trailing content");
+        return new DependencyManifest(List.copyOf(repositories), List.copyOf(dependencies), List.copyOf(relocations),
+                List.copyOf(relocationExcludes));
+    }
+
+    private DependencyManifest.Repository readRepository() {
+        String url = "", user = "", pass = "";
+        expect('{');
+        if (!tryConsume('}')) {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "url" -> url = readText();
+                    case "user" -> user = readText();
+                    case "pass" -> pass = readText();
+                    default -> skipValue();
+                }
+            } while (tryConsume(','));
+            expect('}');
+        }
+        return new DependencyManifest.Repository(url, user, pass);
+    }
+
+    private DependencyManifest.Dependency readDependency() {
+        String group = "", artifact = "", version = "", checksum = "";
+        expect('{');
+        if (!tryConsume('}')) {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "group" -> group = readText();
+                    case "artifact" -> artifact = readText();
+                    case "version" -> version = readText();
+                    case "checksum" -> checksum = readText();
+                    default -> skipValue();
+                }
+            } while (tryConsume(','));
+            expect('}');
+        }
+        return new DependencyManifest.Dependency(group, artifact, version, checksum);
+    }
+
+    private DependencyManifest.Relocation readRelocation() {
+        String from = "", to = "";
+        expect('{');
+        if (!tryConsume('}')) {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "from" -> from = readText();
+                    case "to" -> to = readText();
+                    default -> skipValue();
+                }
+            } while (tryConsume(','));
+            expect('}');
+        }
+        return new DependencyManifest.Relocation(from, to);
+    }
+
+    private void readArray(Runnable element) {
+        expect('[');
+        if (tryConsume(']')) return;
+        do {
+            element.run();
+        } while (tryConsume(','));
+        expect(']');
+    }
+
+    /**
+     * Reads a string value, treating {@code null} as an empty string and scalars as their raw text.
+     */
+    private String readText() {
+        skipWhitespace();
+        if (pos < length && json.charAt(pos) == '"') return readString();
+
+        int start = pos;
+        skipValue();
+        String raw = json.substring(start, pos).trim();
+        return raw.equals("null") ? "" : raw;
+    }
+
+    private String readString() {
+        expect('"');
+        int start = pos;
+        // Fast path: most manifest strings contain no escapes and can be sliced directly.
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c == '"') return json.substring(start, pos++);
+            if (c == '\\') break;
+            pos++;
+        }
+
+        StringBuilder out = new StringBuilder(json.substring(start, pos));
+        while (pos < length) {
+            char c = json.charAt(pos++);
+            if (c == '"') return out.toString();
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            if (pos >= length) break;
+            char escaped = json.charAt(pos++);
+            switch (escaped) {
+                case '"', '\\', '/' -> out.append(escaped);
+                case 'b' -> out.append('\b');
+                case 'f' -> out.append('\f');
+                case 'n' -> out.append('\n');
+                case 'r' -> out.append('\r');
+                case 't' -> out.append('\t');
+                case 'u' -> {
+                    if (pos + 4 > length) throw error("truncated unicode escape");
+                    try {
+                        out.append((char) Integer.parseInt(json, pos, pos + 4, 16));
+                    } catch (NumberFormatException e) {
+                        throw error("invalid unicode escape");
+                    }
+                    pos += 4;
+                }
+                default -> throw error("invalid escape '\\" + escaped + "'");
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private void skipValue() {
+        skipWhitespace();
+        if (pos >= length) throw error("unexpected end of input");
+
+        char c = json.charAt(pos);
+        switch (c) {
+            case '"' -> readString();
+            case '{' -> {
+                pos++;
+                if (tryConsume('}')) return;
+                do {
+                    readString();
+                    expect(':');
+                    skipValue();
+                } while (tryConsume(','));
+                expect('}');
+            }
+            case '[' -> readArray(this::skipValue);
+            default -> {
+                int start = pos;
+                while (pos < length) {
+                    char s = json.charAt(pos);
+                    if (s == ',' || s == '}' || s == ']' || Character.isWhitespace(s)) break;
+                    pos++;
+                }
+                if (start == pos) throw error("unexpected character '" + c + "'");
+            }
+        }
+    }
+
+    private void expect(char expected) {
+        if (!tryConsume(expected)) {
+            throw error(pos < length ? "expected '" + expected + "' but found '" + json.charAt(pos) + "'" : "expected '" + expected + "'");
+        }
+    }
+
+    private boolean tryConsume(char expected) {
+        skipWhitespace();
+        if (pos < length && json.charAt(pos) == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < length && Character.isWhitespace(json.charAt(pos))) pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Malformed dependency manifest at offset " + pos + ": " + message);
+    }
+}
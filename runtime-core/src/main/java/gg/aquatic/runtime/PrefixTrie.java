@@ -0,0 +1,114 @@
+package gg.aquatic.runtime;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable character trie mapping name prefixes to their replacements. Lookups walk the name once
+ * and always pick the longest matching prefix; they allocate only when a prefix actually matches.
+ */
+final class PrefixTrie {
+    private final Node root;
+    private final boolean empty;
+
+    private PrefixTrie(Node root, boolean empty) {
+        this.root = root;
+        this.empty = empty;
+    }
+
+    /**
+     * Builds a trie from the given prefix to replacement mappings.
+     */
+    static PrefixTrie of(Iterable<Map.Entry<String, String>> mappings) {
+        Node root = new Node();
+        boolean empty = true;
+        for (Map.Entry<String, String> mapping : mappings) {
+            String prefix = mapping.getKey();
+            if (prefix.isEmpty()) continue;
+
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.childOrCreate(prefix.charAt(i));
+            }
+            node.replacement = mapping.getValue();
+            node.length = prefix.length();
+            empty = false;
+        }
+        return new PrefixTrie(root, empty);
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Returns the name with its longest matching prefix replaced, or the same instance if no prefix matches.
+     */
+    String map(String name) {
+        Node match = longestMatch(name, 0);
+        return match == null ? name : match.replacement + name.substring(match.length);
+    }
+
+    /**
+     * Replaces every occurrence of a prefix anywhere in the text in a single left-to-right pass,
+     * preferring the longest prefix at each position. Returns the same instance if nothing matches.
+     */
+    String replaceAll(String text) {
+        if (empty) return text;
+
+        StringBuilder out = null;
+        int copied = 0;
+        int i = 0;
+        while (i < text.length()) {
+            Node match = longestMatch(text, i);
+            if (match == null) {
+                i++;
+                continue;
+            }
+            if (out == null) out = new StringBuilder(text.length() + 16);
+            out.append(text, copied, i).append(match.replacement);
+            i += match.length;
+            copied = i;
+        }
+        if (out == null) return text;
+        return out.append(text, copied, text.length()).toString();
+    }
+
+    private Node longestMatch(String text, int start) {
+        Node node = root;
+        Node match = null;
+        for (int i = start; i < text.length(); i++) {
+            node = node.child(text.charAt(i));
+            if (node == null) break;
+            if (node.replacement != null) match = node;
+        }
+        return match;
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private String replacement;
+        private int length;
+
+        Node child(char c) {
+            char[] k = keys;
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] == c) return children[i];
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node child = child(c);
+            if (child != null) return child;
+
+            child = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = c;
+            children[children.length - 1] = child;
+            return child;
+        }
+    }
+}
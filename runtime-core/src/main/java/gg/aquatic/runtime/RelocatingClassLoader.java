@@ -0,0 +1,268 @@
+package gg.aquatic.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.SecureClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
+
+/**
+ * Class loader that serves classes and resources straight from the downloaded jars and relocates
+ * each class in memory the first time it is loaded. Nothing is relocated up front, and classes
+ * that are never loaded are never transformed. Classes are looked up by their relocated names,
+ * exactly as they would appear in jars relocated by {@link Relocator#relocate(Path, Path)}.
+ * <p>
+ * Optionally, each relocated class is also written to a cache directory per jar, so later runs
+ * define it without transforming it again.
+ */
+public final class RelocatingClassLoader extends SecureClassLoader implements Closeable {
+    private static final String PROTOCOL = "runtime-relocated";
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final List<OpenSource> sources = new ArrayList<>();
+    private final Relocator relocator;
+    private final ClassTransformer transformer;
+
+    RelocatingClassLoader(List<Source> sources, Relocator relocator, ClassLoader parent) throws Exception {
+        super(parent);
+        this.relocator = relocator;
+        this.transformer = relocator.newTransformer();
+        try {
+            for (Source source : sources) {
+                JarFile jar = new JarFile(source.jar().toFile(), true, ZipFile.OPEN_READ, Runtime.version());
+                this.sources.add(new OpenSource(source, jar, new CodeSource(source.jar().toUri().toURL(), (CodeSigner[]) null)));
+            }
+        } catch (Exception e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the jars this class loader serves, in lookup order.
+     *
+     * @return the paths of the original downloaded jars
+     */
+    public List<Path> getJars() {
+        return sources.stream().map(source -> source.source().jar()).toList();
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String internalName = name.replace('.', '/');
+        for (OpenSource source : sources) {
+            for (String original : originalNames(source, internalName, true)) {
+                JarEntry entry = source.jar().getJarEntry(original + ".class");
+                if (entry == null) continue;
+
+                try {
+                    byte[] bytes = classBytes(source, entry, internalName);
+                    definePackageFor(name);
+                    return defineClass(name, bytes, 0, bytes.length, source.codeSource());
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        for (OpenSource source : sources) {
+            URL url = findResource(source, name);
+            if (url != null) return url;
+        }
+        return null;
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        List<URL> urls = new ArrayList<>();
+        for (OpenSource source : sources) {
+            URL url = findResource(source, name);
+            if (url != null) urls.add(url);
+        }
+        return Collections.enumeration(urls);
+    }
+
+    /**
+     * Closes the jars served by this class loader. Classes that were already loaded stay usable,
+     * but no further classes or resources can be loaded.
+     *
+     * @throws IOException if a jar cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (OpenSource source : sources) {
+            try {
+                source.jar().close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private URL findResource(OpenSource source, String name) {
+        boolean isClass = name.endsWith(".class");
+        String lookupName = isClass ? name.substring(0, name.length() - 6) : name;
+        for (String original : originalNames(source, lookupName, isClass)) {
+            String entryName = isClass ? original + ".class" : original;
+            JarEntry entry = source.jar().getJarEntry(entryName);
+            if (entry == null || entry.isDirectory()) continue;
+
+            try {
+                if (!source.source().relocated()) return jarUrl(source, entryName);
+                if (isClass) {
+                    return memoryUrl(name, classBytes(source, entry, lookupName));
+                }
+                if (name.startsWith("META-INF/services/")) {
+                    String content = read(source, entry);
+                    String relocated = relocator.relocateServiceFile(content);
+                    return relocated == content ? jarUrl(source, entryName) : memoryUrl(name, relocated.getBytes(StandardCharsets.UTF_8));
+                }
+                return jarUrl(source, entryName);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the names an entry may have in the original jar to end up with the given name after
+     * relocation: the relocated original, and the name itself if relocation leaves it untouched.
+     */
+    private List<String> originalNames(OpenSource source, String name, boolean isClass) {
+        if (!source.source().relocated()) return List.of(name);
+
+        String original = isClass ? relocator.unmapClassName(name) : relocator.unmapResourceEntryName(name);
+        boolean unchanged = isClass ? relocator.mapClassName(name) == name : relocator.mapResourceEntryName(name) == name;
+        if (original == null) return unchanged ? List.of(name) : List.of();
+        return unchanged ? List.of(original, name) : List.of(original);
+    }
+
+    private byte[] classBytes(OpenSource source, JarEntry entry, String internalName) throws IOException {
+        Path cached = !source.source().relocated() || source.source().cacheDir() == null
+                ? null : source.source().cacheDir().resolve(internalName + ".class");
+        if (cached != null && Files.isRegularFile(cached)) {
+            return Files.readAllBytes(cached);
+        }
+
+        byte[] original;
+        try (InputStream in = source.jar().getInputStream(entry)) {
+            original = in.readAllBytes();
+        }
+        if (!source.source().relocated()) return original;
+
+        byte[] relocated;
+        try {
+            relocated = relocator.transformClass(transformer, original);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not relocate " + entry.getName() + " from " + source.source().jar(), e);
+        }
+        byte[] bytes = relocated != null ? relocated : original;
+        if (cached != null) writeCache(cached, bytes);
+        return bytes;
+    }
+
+    // Cache writes are best effort: a failed write only means the class is relocated again next time.
+    private static void writeCache(Path cached, byte[] bytes) {
+        try {
+            Files.createDirectories(cached.getParent());
+            Path temp = Files.createTempFile(cached.getParent(), "class-", ".tmp");
+            try {
+                Files.write(temp, bytes);
+                Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.err.println("[DependencyResolver] WARNING: Could not cache relocated class " + cached + ": " + e.getMessage());
+        }
+    }
+
+    private void definePackageFor(String className) {
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot < 0) return;
+
+        String packageName = className.substring(0, lastDot);
+        if (getDefinedPackage(packageName) != null) return;
+        try {
+            definePackage(packageName, null, null, null, null, null, null, null);
+        } catch (IllegalArgumentException ignored) {
+            // Defined concurrently by another thread.
+        }
+    }
+
+    private static String read(OpenSource source, JarEntry entry) throws IOException {
+        try (InputStream in = source.jar().getInputStream(entry)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static URL jarUrl(OpenSource source, String entryName) throws IOException {
+        return new URL("jar:" + source.source().jar().toUri() + "!/" + entryName);
+    }
+
+    private static URL memoryUrl(String name, byte[] content) throws IOException {
+        return new URL(null, PROTOCOL + ":/" + name, new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) {
+                return new URLConnection(url) {
+                    @Override
+                    public void connect() {
+                        connected = true;
+                    }
+
+                    @Override
+                    public InputStream getInputStream() {
+                        return new ByteArrayInputStream(content);
+                    }
+
+                    @Override
+                    public int getContentLength() {
+                        return content.length;
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * A jar served by the class loader.
+     *
+     * @param jar       the original downloaded jar
+     * @param relocated whether classes and resources of the jar are relocated
+     * @param cacheDir  the directory relocated classes of the jar are cached in, or {@code null} to not cache them
+     */
+    record Source(Path jar, boolean relocated, Path cacheDir) {
+    }
+
+    private record OpenSource(Source source, JarFile jar, CodeSource codeSource) {
+    }
+}
@@ -1,43 +1,101 @@
 package gg.aquatic.runtime;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.*;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
 
 /**
  * The {@code Relocator} class provides functionality for relocating, remapping,
- * and processing class and package names in JAR files. It leverages the ASM library
- * for manipulation of bytecode and provides tools for transforming classes and
- * resources within JAR files based on configurable mappings.
+ * and processing class and package names in JAR files. Classes are transformed by a
+ * built-in constant pool rewriter, or optionally by the ASM library, and resources
+ * within JAR files are renamed and rewritten based on configurable mappings.
  */
 public class Relocator {
+    /**
+     * Version of the relocation output. It is part of the cache key of relocated jars and must be
+     * changed whenever jars relocated by an older version should no longer be reused.
+     */
+    public static final String VERSION = "3";
+
     private final Map<String, String> prefixMappings = new HashMap<>();
     private final Map<String, String> classMappings = new HashMap<>();
+    // Classes that keep their name even though a mapping covers them, see keepClassNames(Path).
+    private final Set<String> keptClassNames = new HashSet<>();
     private final List<Map.Entry<String, String>> orderedPrefixMappings = new ArrayList<>();
-    private final URLClassLoader toolLoader;
+    private byte[][] prefixBytes = new byte[0][];
+    // Longest-prefix lookups for slash separated (internal and resource) and dot separated names.
+    private PrefixTrie slashPrefixes = PrefixTrie.of(List.of());
+    private PrefixTrie dotPrefixes = PrefixTrie.of(List.of());
+    // Reverse lookups from relocated names back to original names, used when loading lazily.
+    private Map<String, String> reverseClassMappings = Map.of();
+    private PrefixTrie reverseSlashPrefixes = PrefixTrie.of(List.of());
+    private PrefixTrie reverseDotPrefixes = PrefixTrie.of(List.of());
+    private static final int MAX_PENDING_ENTRIES = 256;
+    // Fixed manifest timestamp (1980-02-01 00:00 in DOS format) so relocated jars are reproducible.
+    private static final int MANIFEST_DOS_TIME = 0;
+    private static final int MANIFEST_DOS_DATE = (2 << 5) | 1;
+    // ASM engine, or null to use the built-in constant pool rewriter.
+    private final AsmRemapper asm;
+    // Identifies the engine in class cache keys, since both engines produce different bytes.
+    private final String engineId;
+    private ClassCache classCache;
+
+    /**
+     * Constructs a {@code Relocator} instance that uses the built-in relocation engine. Classes are
+     * relocated by rewriting their constant pool directly, so no additional libraries are needed.
+     */
+    public Relocator() {
+        this.asm = null;
+        this.engineId = "builtin";
+    }
 
     /**
      * Constructs a {@code Relocator} instance with the specified ASM jar files.
-     * The ASM and ASM Commons JAR files are loaded into a {@link URLClassLoader}
-     * to facilitate relocation operations.
+     * The ASM and ASM Commons JAR files are loaded into a {@link java.net.URLClassLoader}
+     * and the ASM entry points used during relocation are bound once as method handles.
      *
      * @param asmJar the path to the ASM JAR file used for class manipulation
      * @param asmCommonsJar the path to the ASM Commons JAR file for additional utilities
-     * @throws Exception if an error occurs while initializing the class loader
+     * @throws Exception if an error occurs while initializing the class loader or binding ASM
      */
     public Relocator(Path asmJar, Path asmCommonsJar) throws Exception {
-        this.toolLoader = new URLClassLoader(new URL[]{asmJar.toUri().toURL(), asmCommonsJar.toUri().toURL()}, null);
+        this.asm = new AsmRemapper(asmJar, asmCommonsJar);
+        this.engineId = "asm:" + asmJar.getFileName() + ":" + asmCommonsJar.getFileName();
+    }
+
+    /**
+     * Stores relocated classes in a content-addressed cache in the given directory and looks them up
+     * there before transforming a class. Entries are keyed by the original class bytes and the
+     * mappings in effect, so classes that are identical across versions of a dependency, or across
+     * dependencies, are only relocated once.
+     *
+     * @param directory the cache directory, shared safely between relocators with different mappings,
+     *                  or {@code null} to disable the cache
+     */
+    public void useClassCache(Path directory) {
+        this.classCache = directory == null ? null : new ClassCache(directory);
     }
 
     /**
@@ -59,40 +117,132 @@ public class Relocator {
     }
 
     /**
-     * Prepares a mapping of class names based on the provided JAR files. This method processes the
-     * class entries within the JARs and updates the class mappings to reflect any modifications
-     * made during name remapping processes.
+     * Adds an explicit mapping for a single class, taking precedence over the package mappings
+     * added with {@link #addMapping(String, String)}. Only needed for classes that should be moved
+     * somewhere their package mapping would not put them.
+     *
+     * @param from the original fully qualified class name, using dot notation (e.g., "com.example.Foo")
+     * @param to the target fully qualified class name, using dot notation (e.g., "org.example.Bar")
+     */
+    public void addClassMapping(String from, String to) {
+        classMappings.put(from.replace('.', '/'), to.replace('.', '/'));
+        rebuildPrefixCache();
+    }
+
+    /**
+     * Keeps the original names of the classes in the given JAR file, taking precedence over all
+     * mappings. Use this for JAR files that are loaded without being relocated: their classes stay
+     * where they are, so references to them from relocated JAR files must not be remapped either.
+     * Only the entry names in the JAR's central directory are read.
      *
-     * @param jars a list of paths to JAR files that will be processed for class name mappings
-     * @throws Exception if an error occurs during the reading of JAR files or the mapping process
+     * @param jar the path to the JAR file whose class names are kept
+     * @throws Exception if the JAR file cannot be read
      */
+    public void keepClassNames(Path jar) throws Exception {
+        try (ZipArchiveReader zip = ZipArchiveReader.open(jar)) {
+            for (ZipArchiveReader.Entry entry : zip.entries()) {
+                String name = entry.name();
+                if (entry.isDirectory() || !name.endsWith(".class")) continue;
+
+                String internalName = withoutVersionPrefix(name.substring(0, name.length() - 6));
+                // Names no mapping covers would stay the same anyway.
+                if (mapClassName(internalName) != internalName) keptClassNames.add(internalName);
+            }
+        }
+    }
+
+    /**
+     * Formerly scanned the given JAR files for class names to remap. Class names are now mapped
+     * directly from the package mappings while relocating, so this method does nothing.
+     *
+     * @param jars ignored
+     * @throws Exception never
+     * @deprecated class mappings no longer need to be prepared
+     */
+    @Deprecated
     public void prepareClassMappings(List<Path> jars) throws Exception {
-        classMappings.clear();
-        for (Path jar : jars) {
-            try (JarInputStream jin = new JarInputStream(new BufferedInputStream(Files.newInputStream(jar)))) {
-                JarEntry entry;
-                while ((entry = jin.getNextJarEntry()) != null) {
-                    String name = entry.getName();
-                    if (!name.endsWith(".class")) continue;
-
-                    String internalName = name.substring(0, name.length() - 6);
-                    if (internalName.startsWith("META-INF/versions/")) {
-                        int verEnd = internalName.indexOf('/', 18);
-                        if (verEnd != -1) internalName = internalName.substring(verEnd + 1);
-                    }
+    }
 
-                    String mapped = mapInternalName(internalName);
-                    if (!mapped.equals(internalName)) {
-                        classMappings.put(internalName, mapped);
-                    }
+    /**
+     * Formerly scanned the given JAR files for class names to remap. Class names are now mapped
+     * directly from the package mappings while relocating, so this method does nothing.
+     *
+     * @param jars ignored
+     * @param executor ignored
+     * @throws Exception never
+     * @deprecated class mappings no longer need to be prepared
+     */
+    @Deprecated
+    public void prepareClassMappings(List<Path> jars, Executor executor) throws Exception {
+    }
+
+    /**
+     * Returns a fingerprint of the mappings currently in effect: the prefix mappings, the class
+     * mappings added by {@link #addClassMapping(String, String)} and the class names kept by
+     * {@link #keepClassNames(Path)}. Two relocators with the same
+     * fingerprint produce the same output for the same input.
+     *
+     * @return a hex SHA-256 fingerprint of the effective mappings
+     */
+    public String mappingFingerprint() {
+        MessageDigest digest = Digests.sha256();
+        for (Map.Entry<String, String> m : orderedPrefixMappings) {
+            digest.update(("prefix:" + m.getKey() + "=" + m.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        for (Map.Entry<String, String> m : new TreeMap<>(classMappings).entrySet()) {
+            digest.update(("class:" + m.getKey() + "=" + m.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        for (String name : new TreeSet<>(keptClassNames)) {
+            digest.update(("keep:" + name + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return Digests.hex(digest.digest());
+    }
+
+    /**
+     * Returns whether relocating the given JAR file would change anything. A JAR is affected if any of
+     * its class, service or resource names is remapped, if a service file mentions a relocated package,
+     * or if any class references a relocated prefix. Unaffected JARs can be used as they are.
+     *
+     * @param jar the path to the JAR file to check
+     * @return {@code true} if relocation would change the JAR
+     * @throws Exception if the JAR file cannot be read
+     */
+    public boolean isAffected(Path jar) throws Exception {
+        if (orderedPrefixMappings.isEmpty() && classMappings.isEmpty()) return false;
+
+        try (ZipArchiveReader zip = ZipArchiveReader.open(jar)) {
+            // Names first: they come straight from the central directory and need no decompression.
+            for (ZipArchiveReader.Entry entry : zip.entries()) {
+                String name = entry.name();
+                if (entry.isDirectory()) continue;
+                if (name.endsWith(".class")) {
+                    String internalName = withoutVersionPrefix(name.substring(0, name.length() - 6));
+                    if (mapClassName(internalName) != internalName) return true;
+                } else if (name.startsWith("META-INF/services/")) {
+                    String serviceName = name.substring("META-INF/services/".length());
+                    if (mapDotName(serviceName) != serviceName) return true;
+                } else if (mapResourceName(name) != name) {
+                    return true;
+                }
+            }
+
+            for (ZipArchiveReader.Entry entry : zip.entries()) {
+                String name = entry.name();
+                if (name.endsWith(".class")) {
+                    if (ConstantPoolScanner.referencesAny(zip.read(entry), prefixBytes)) return true;
+                } else if (name.startsWith("META-INF/services/") && !entry.isDirectory()) {
+                    String content = new String(zip.read(entry), StandardCharsets.UTF_8);
+                    if (relocateServiceFile(content) != content) return true;
                 }
             }
         }
+        return false;
     }
 
     /**
      * Relocates and processes the classes and resources from the input JAR file to the output JAR file
-     * by applying remappings and transformations as defined in the class configuration.
+     * by applying remappings and transformations as defined in the class configuration. Entries whose
+     * content is not changed by the relocation are copied with their original compressed bytes.
      *
      * @param input the path to the input JAR file that contains the classes and resources to be relocated
      * @param output the path to the output JAR file where the relocated and transformed classes and resources will be written
@@ -100,114 +250,313 @@ public class Relocator {
      *                   reflection issues, or JAR file handling errors
      */
     public void relocate(Path input, Path output) throws Exception {
-        Class<?> classReaderClass = toolLoader.loadClass("org.objectweb.asm.ClassReader");
-        Class<?> classWriterClass = toolLoader.loadClass("org.objectweb.asm.ClassWriter");
-        Class<?> classVisitorClass = toolLoader.loadClass("org.objectweb.asm.ClassVisitor");
-        Class<?> remapClass = toolLoader.loadClass("org.objectweb.asm.commons.ClassRemapper");
-        Class<?> remapperClass = toolLoader.loadClass("org.objectweb.asm.commons.Remapper");
-        Class<?> simpleRemapperClass = toolLoader.loadClass("org.objectweb.asm.commons.SimpleRemapper");
-
-        Object remapper = simpleRemapperClass.getConstructor(Map.class).newInstance(classMappings);
-        Method mapMethod = remapperClass.getMethod("map", String.class);
-
-        try (JarInputStream jin = new JarInputStream(new BufferedInputStream(Files.newInputStream(input)))) {
-            Manifest manifest = jin.getManifest();
-            if (manifest == null) manifest = new Manifest();
+        relocate(input, output, null);
+    }
+
+    /**
+     * Relocates the input JAR file like {@link #relocate(Path, Path)}, remapping class entries
+     * concurrently on the given executor. Entries are still read and written sequentially in their
+     * original order, so the output is identical to a sequential relocation.
+     *
+     * @param input the path to the input JAR file that contains the classes and resources to be relocated
+     * @param output the path to the output JAR file where the relocated and transformed classes and resources will be written
+     * @param executor the executor used to remap class entries, for example {@link java.util.concurrent.ForkJoinPool#commonPool()},
+     *                 or {@code null} to remap them on the calling thread
+     * @throws Exception if an error occurs during the relocation process, such as IO exceptions,
+     *                   reflection issues, or JAR file handling errors
+     */
+    public void relocate(Path input, Path output, Executor executor) throws Exception {
+        ClassTransformer transformer = newTransformer();
+
+        try (ZipArchiveReader zip = ZipArchiveReader.open(input);
+             ZipArchiveWriter writer = new ZipArchiveWriter(output)) {
+            Manifest manifest = new Manifest();
+            for (ZipArchiveReader.Entry entry : zip.entries()) {
+                if (entry.name().equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+                    manifest = new Manifest(new ByteArrayInputStream(zip.read(entry)));
+                    break;
+                }
+            }
             manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
             manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"), "true");
+            ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+            manifest.write(manifestBytes);
+            writer.write(JarFile.MANIFEST_NAME, MANIFEST_DOS_TIME, MANIFEST_DOS_DATE, manifestBytes.toByteArray());
 
-            try (JarOutputStream jout = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(output)), manifest)) {
-                JarEntry entry;
-                while ((entry = jin.getNextJarEntry()) != null) {
-                    String name = entry.getName();
-                    if (entry.isDirectory() || name.equalsIgnoreCase("META-INF/MANIFEST.MF") || name.toUpperCase().startsWith("META-INF/SIG-")) continue;
-
-                    byte[] data = jin.readAllBytes();
-
-                    if (name.endsWith(".class")) {
-                        Object reader = classReaderClass.getConstructor(byte[].class).newInstance((Object) data);
-
-                        Constructor<?> writerCons = classWriterClass.getConstructor(classReaderClass, int.class);
-                        Object writer = writerCons.newInstance(reader, 0);
-                        Constructor<?> remapConstructor = remapClass.getConstructor(classVisitorClass, remapperClass);
-                        Object visitor = remapConstructor.newInstance(writer, remapper);
-
-                        Method accept = classReaderClass.getMethod("accept", classVisitorClass, int.class);
-                        accept.invoke(reader, visitor, 0);
-                        data = (byte[]) classWriterClass.getMethod("toByteArray").invoke(writer);
-
-                        String prefix = "";
-                        String internalName = name.substring(0, name.length() - 6);
-                        if (internalName.startsWith("META-INF/versions/")) {
-                            int verEnd = internalName.indexOf('/', 18);
-                            if (verEnd != -1) {
-                                prefix = name.substring(0, verEnd + 1);
-                                internalName = internalName.substring(verEnd + 1);
-                            }
-                        }
-
-                        String mappedInternalName = (String) mapMethod.invoke(remapper, internalName);
-                        name = prefix + (mappedInternalName != null ? mappedInternalName : internalName) + ".class";
-                    } else if (name.startsWith("META-INF/services/")) {
-                        String content = new String(data, StandardCharsets.UTF_8);
-                        for (Map.Entry<String, String> m : orderedPrefixMappings) {
-                            String f = m.getKey().replace('/', '.');
-                            String t = m.getValue().replace('/', '.');
-                            content = content.replace(f, t);
-                        }
-                        String serviceName = name.substring("META-INF/services/".length());
-                        String mappedServiceName = mapDotName(serviceName);
-                        if (!mappedServiceName.equals(serviceName)) {
-                            name = "META-INF/services/" + mappedServiceName;
-                        }
-                        data = content.getBytes(StandardCharsets.UTF_8);
-                    } else {
-                        name = mapResourceName(name);
-                    }
+            // Bounded window of entries whose class bytes may still be remapped in the background.
+            Deque<PendingEntry> pending = new ArrayDeque<>();
+            for (ZipArchiveReader.Entry entry : zip.entries()) {
+                String name = entry.name();
+                if (entry.isDirectory() || name.equalsIgnoreCase(JarFile.MANIFEST_NAME) || name.toUpperCase().startsWith("META-INF/SIG-")) continue;
 
-                    try {
-                        jout.putNextEntry(new JarEntry(name));
-                        jout.write(data);
-                        jout.closeEntry();
-                    } catch (java.util.zip.ZipException ignored) {}
+                pending.add(transformEntry(zip, entry, transformer, executor));
+                if (pending.size() >= MAX_PENDING_ENTRIES) {
+                    writeEntry(zip, writer, pending.poll());
                 }
             }
+            while (!pending.isEmpty()) {
+                writeEntry(zip, writer, pending.poll());
+            }
         }
     }
 
-    private String mapInternalName(String internalName) {
-        for (Map.Entry<String, String> m : orderedPrefixMappings) {
-            String from = m.getKey();
-            if (internalName.startsWith(from)) {
-                return m.getValue() + internalName.substring(from.length());
+    /**
+     * Computes the target name of an entry and, if its content changes, its new content. Entries
+     * whose content stays the same complete with {@code null} and are later copied without being
+     * decompressed and compressed again. Classes whose constant pool mentions none of the relocated
+     * prefixes are not transformed at all.
+     */
+    private PendingEntry transformEntry(ZipArchiveReader zip, ZipArchiveReader.Entry entry, ClassTransformer transformer,
+                                        Executor executor) throws Exception {
+        String name = entry.name();
+        if (name.endsWith(".class")) {
+            String prefix = "";
+            String internalName = name.substring(0, name.length() - 6);
+            if (internalName.startsWith("META-INF/versions/")) {
+                int verEnd = internalName.indexOf('/', 18);
+                if (verEnd != -1) {
+                    prefix = name.substring(0, verEnd + 1);
+                    internalName = internalName.substring(verEnd + 1);
+                }
+            }
+
+            String mappedName = prefix + mapClassName(internalName) + ".class";
+
+            CompletableFuture<byte[]> remapped;
+            if (executor == null) {
+                remapped = CompletableFuture.completedFuture(remapEntry(zip, entry, transformer));
+            } else {
+                remapped = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return remapEntry(zip, entry, transformer);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
             }
+            return new PendingEntry(mappedName, entry, remapped);
         }
-        return internalName;
-    }
 
-    private String mapDotName(String name) {
-        for (Map.Entry<String, String> m : orderedPrefixMappings) {
-            String from = m.getKey().replace('/', '.');
-            if (name.startsWith(from)) {
-                return m.getValue().replace('/', '.') + name.substring(from.length());
+        if (name.startsWith("META-INF/services/")) {
+            String original = new String(zip.read(entry), StandardCharsets.UTF_8);
+            String content = relocateServiceFile(original);
+            String serviceName = name.substring("META-INF/services/".length());
+            String mappedServiceName = mapDotName(serviceName);
+            if (mappedServiceName != serviceName) {
+                name = "META-INF/services/" + mappedServiceName;
             }
+            byte[] data = content == original ? null : content.getBytes(StandardCharsets.UTF_8);
+            return new PendingEntry(name, entry, CompletableFuture.completedFuture(data));
         }
-        return name;
+
+        return new PendingEntry(mapResourceName(name), entry, CompletableFuture.completedFuture(null));
     }
 
-    private String mapResourceName(String name) {
-        for (Map.Entry<String, String> m : orderedPrefixMappings) {
-            String from = m.getKey();
-            if (name.startsWith(from)) {
-                return m.getValue() + name.substring(from.length());
+    private byte[] remapEntry(ZipArchiveReader zip, ZipArchiveReader.Entry entry, ClassTransformer transformer) throws Exception {
+        return transformClass(transformer, zip.read(entry));
+    }
+
+    /**
+     * Creates a transformer for the mappings currently in effect, using the configured engine.
+     */
+    ClassTransformer newTransformer() throws Exception {
+        NameMapping mapping = new NameMapping(Map.copyOf(classMappings), Set.copyOf(keptClassNames), slashPrefixes);
+        ClassTransformer transformer = asm != null ? asm.forMapping(mapping) : new ConstantPoolRelocator(mapping::map, prefixBytes);
+        if (classCache == null) return transformer;
+        return classCache.wrap(transformer, VERSION + "|" + engineId + "|" + mappingFingerprint());
+    }
+
+    /**
+     * Relocates a single class file, returning {@code null} if relocation does not change it.
+     * Classes whose constant pool mentions none of the relocated names are not transformed at all.
+     */
+    byte[] transformClass(ClassTransformer transformer, byte[] original) throws Exception {
+        if (!ConstantPoolScanner.referencesAny(original, prefixBytes)) return null;
+        byte[] remapped = transformer.transform(original);
+        return remapped == original || Arrays.equals(original, remapped) ? null : remapped;
+    }
+
+    /**
+     * Returns the relocated internal name of a class, or the same instance if it is not relocated.
+     */
+    String mapClassName(String internalName) {
+        if (keptClassNames.contains(internalName)) return internalName;
+        String mapped = classMappings.get(internalName);
+        return mapped != null ? mapped : slashPrefixes.map(internalName);
+    }
+
+    /**
+     * Returns the original internal name of a class that relocates to the given name, or
+     * {@code null} if no relocated class has that name. A name that relocation leaves untouched
+     * is not reported here.
+     */
+    String unmapClassName(String internalName) {
+        String original = reverseClassMappings.get(internalName);
+        if (original == null) original = reverseSlashPrefixes.map(internalName);
+        return original != internalName && mapClassName(original).equals(internalName) ? original : null;
+    }
+
+    /**
+     * Returns the relocated name of a resource, or the same instance if it is not relocated.
+     * Service files are renamed after the service they declare.
+     */
+    String mapResourceEntryName(String name) {
+        if (name.startsWith("META-INF/services/")) {
+            String serviceName = name.substring("META-INF/services/".length());
+            String mapped = mapDotName(serviceName);
+            return mapped == serviceName ? name : "META-INF/services/" + mapped;
+        }
+        return mapResourceName(name);
+    }
+
+    /**
+     * Returns the original name of a resource that relocates to the given name, or {@code null} if
+     * no relocated resource has that name. A name that relocation leaves untouched is not reported here.
+     */
+    String unmapResourceEntryName(String name) {
+        String original;
+        if (name.startsWith("META-INF/services/")) {
+            String serviceName = name.substring("META-INF/services/".length());
+            String originalService = reverseDotPrefixes.map(serviceName);
+            original = originalService == serviceName ? name : "META-INF/services/" + originalService;
+        } else {
+            original = reverseSlashPrefixes.map(name);
+        }
+        return original != name && mapResourceEntryName(original).equals(name) ? original : null;
+    }
+
+    /**
+     * Rewrites the relocated class names mentioned in a service file, returning the same instance
+     * if it mentions none. Lines naming a kept class are left as they are.
+     */
+    String relocateServiceFile(String content) {
+        if (keptClassNames.isEmpty()) return dotPrefixes.replaceAll(content);
+
+        String[] lines = content.split("\n", -1);
+        boolean changed = false;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int comment = line.indexOf('#');
+            String provider = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (keptClassNames.contains(provider.replace('.', '/'))) continue;
+
+            String relocated = dotPrefixes.replaceAll(line);
+            if (relocated != line) {
+                lines[i] = relocated;
+                changed = true;
             }
         }
-        return name;
+        return changed ? String.join("\n", lines) : content;
+    }
+
+    private void writeEntry(ZipArchiveReader zip, ZipArchiveWriter writer, PendingEntry pending) throws Exception {
+        byte[] data = await(pending.data());
+        ZipArchiveReader.Entry source = pending.source();
+        if (data == null) {
+            writer.writeRaw(pending.name(), source, zip.readRaw(source));
+        } else {
+            writer.write(pending.name(), source.dosTime(), source.dosDate(), data);
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) throw exception;
+            if (cause instanceof Error error) throw error;
+            throw e;
+        }
+    }
+
+    // The name mappers return the given instance when no prefix matches, so callers can compare by identity.
+    private String mapDotName(String name) {
+        if (!keptClassNames.isEmpty() && keptClassNames.contains(name.replace('.', '/'))) return name;
+        return dotPrefixes.map(name);
+    }
+
+    private String mapResourceName(String name) {
+        return slashPrefixes.map(name);
+    }
+
+    // Strips the META-INF/versions/<n>/ prefix of classes in multi-release JAR files.
+    private static String withoutVersionPrefix(String internalName) {
+        if (!internalName.startsWith("META-INF/versions/")) return internalName;
+        int verEnd = internalName.indexOf('/', 18);
+        return verEnd == -1 ? internalName : internalName.substring(verEnd + 1);
     }
 
     private void rebuildPrefixCache() {
         orderedPrefixMappings.clear();
         orderedPrefixMappings.addAll(prefixMappings.entrySet());
-        orderedPrefixMappings.sort((a, b) -> Integer.compare(b.getKey().length(), a.getKey().length()));
+        orderedPrefixMappings.sort((a, b) -> a.getKey().length() != b.getKey().length()
+                ? Integer.compare(b.getKey().length(), a.getKey().length())
+                : a.getKey().compareTo(b.getKey()));
+        prefixBytes = Stream.concat(orderedPrefixMappings.stream().map(Map.Entry::getKey), classMappings.keySet().stream().sorted())
+                .map(name -> name.getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+        slashPrefixes = PrefixTrie.of(orderedPrefixMappings);
+        dotPrefixes = PrefixTrie.of(orderedPrefixMappings.stream()
+                .map(m -> Map.entry(m.getKey().replace('/', '.'), m.getValue().replace('/', '.')))
+                .toList());
+
+        Map<String, String> reverseClasses = new HashMap<>();
+        classMappings.forEach((from, to) -> reverseClasses.putIfAbsent(to, from));
+        reverseClassMappings = reverseClasses;
+        reverseSlashPrefixes = PrefixTrie.of(orderedPrefixMappings.stream()
+                .map(m -> Map.entry(m.getValue(), m.getKey()))
+                .toList());
+        reverseDotPrefixes = PrefixTrie.of(orderedPrefixMappings.stream()
+                .map(m -> Map.entry(m.getValue().replace('/', '.'), m.getKey().replace('/', '.')))
+                .toList());
+    }
+
+    /**
+     * Read-only name lookup used by both relocation engines. Instead of holding an entry for every
+     * class, it applies the kept class names, the explicit class mappings and the package prefixes on demand, so it also
+     * covers referenced classes that are not part of the relocated JARs. ASM's {@code SimpleRemapper}
+     * also looks up method, field and attribute keys, which always contain a dot and are never remapped.
+     */
+    private static final class NameMapping extends AbstractMap<String, String> {
+        private final Map<String, String> classMappings;
+        private final Set<String> keptClassNames;
+        private final PrefixTrie prefixes;
+
+        NameMapping(Map<String, String> classMappings, Set<String> keptClassNames, PrefixTrie prefixes) {
+            this.classMappings = classMappings;
+            this.keptClassNames = keptClassNames;
+            this.prefixes = prefixes;
+        }
+
+        /**
+         * Returns the mapped internal name, or the same instance if the name is not relocated.
+         */
+        String map(String internalName) {
+            if (keptClassNames.contains(internalName)) return internalName;
+            String mapped = classMappings.get(internalName);
+            return mapped != null ? mapped : prefixes.map(internalName);
+        }
+
+        @Override
+        public String get(Object key) {
+            if (!(key instanceof String name) || name.indexOf('.') >= 0) return null;
+
+            String mapped = map(name);
+            return mapped == name ? null : mapped;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return classMappings.entrySet();
+        }
+    }
+
+    private record PendingEntry(String name, ZipArchiveReader.Entry source, CompletableFuture<byte[]> data) {
     }
 }
@@ -0,0 +1,138 @@
+package gg.aquatic.runtime;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which repository served artifacts of a group and which repositories answered
+ * {@code 404} for a coordinate. Repositories are then tried in a learned order: the repository
+ * that last served the longest matching group prefix first, repositories with a recent miss for the
+ * coordinate last, and everything else in manifest order. Misses expire after a configurable time.
+ * The table only changes the order in which repositories are asked, so every repository of the
+ * manifest is still tried before an artifact is reported as missing.
+ */
+final class RepositoryRoutes {
+    private static final String FILE_NAME = "repository-routes.properties";
+    private static final String ROUTE = "route.";
+    private static final String MISS = "miss.";
+
+    private final Path cacheDir;
+    private final Duration missTtl;
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    RepositoryRoutes(Path cacheDir, Duration missTtl) {
+        this.cacheDir = cacheDir;
+        this.missTtl = missTtl;
+        load();
+    }
+
+    /**
+     * Returns the repositories in the order they should be asked for the given coordinate.
+     */
+    List<DependencyManifest.Repository> order(List<DependencyManifest.Repository> repositories, String group, String coordinate) {
+        String routed = route(group);
+        long now = System.currentTimeMillis();
+        List<DependencyManifest.Repository> first = new ArrayList<>();
+        List<DependencyManifest.Repository> middle = new ArrayList<>();
+        List<DependencyManifest.Repository> last = new ArrayList<>();
+        for (DependencyManifest.Repository repository : repositories) {
+            String url = normalize(repository.url());
+            String missedUntil = entries.get(MISS + url + "|" + coordinate);
+            if (missedUntil != null && Long.parseLong(missedUntil) > now) {
+                last.add(repository);
+            } else if (url.equals(routed)) {
+                first.add(repository);
+            } else {
+                middle.add(repository);
+            }
+        }
+        first.addAll(middle);
+        first.addAll(last);
+        return first;
+    }
+
+    /**
+     * Records that the given repository served an artifact of the given group.
+     */
+    void served(String group, String repositoryUrl) {
+        String url = normalize(repositoryUrl);
+        if (!url.equals(entries.put(ROUTE + group, url))) dirty = true;
+    }
+
+    /**
+     * Records that the given repository does not have the given coordinate.
+     */
+    void missed(String repositoryUrl, String coordinate) {
+        entries.put(MISS + normalize(repositoryUrl) + "|" + coordinate, Long.toString(System.currentTimeMillis() + missTtl.toMillis()));
+        dirty = true;
+    }
+
+    /**
+     * Persists the table if it changed, dropping misses that have expired.
+     */
+    synchronized void save() throws Exception {
+        if (!dirty) return;
+        dirty = false;
+
+        long now = System.currentTimeMillis();
+        entries.entrySet().removeIf(entry -> entry.getKey().startsWith(MISS) && Long.parseLong(entry.getValue()) <= now);
+        Properties properties = new Properties();
+        properties.putAll(entries);
+
+        Files.createDirectories(cacheDir);
+        Path temp = Files.createTempFile(cacheDir, "repository-routes-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "Learned repository routes");
+        }
+        Files.move(temp, cacheDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Walks the group and its parent packages, longest first.
+    private String route(String group) {
+        String prefix = group;
+        while (true) {
+            String url = entries.get(ROUTE + prefix);
+            if (url != null) return url;
+            int dot = prefix.lastIndexOf('.');
+            if (dot < 0) return null;
+            prefix = prefix.substring(0, dot);
+        }
+    }
+
+    private void load() {
+        Path file = cacheDir.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) return;
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (Exception e) {
+            return;
+        }
+        properties.forEach((key, value) -> {
+            String name = (String) key;
+            if (name.startsWith(MISS)) {
+                try {
+                    Long.parseLong((String) value);
+                } catch (NumberFormatException e) {
+                    return;
+                }
+            }
+            entries.put(name, (String) value);
+        });
+    }
+
+    private static String normalize(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
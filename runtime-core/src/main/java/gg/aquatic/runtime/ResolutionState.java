@@ -0,0 +1,127 @@
+package gg.aquatic.runtime;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Persisted snapshot of the last successful {@link DependencyManager#process} run. It records the
+ * manifest fingerprint together with the size and modification time of every output handed to the
+ * consumer, so a restart with an unchanged manifest can reuse the outputs without resolving,
+ * hashing or relocating anything.
+ */
+final class ResolutionState {
+    private static final String FILE_NAME = "resolution-state.properties";
+
+    private final String fingerprint;
+    private final List<Output> outputs;
+
+    private ResolutionState(String fingerprint, List<Output> outputs) {
+        this.fingerprint = fingerprint;
+        this.outputs = outputs;
+    }
+
+    /**
+     * Captures the current state of the given outputs.
+     */
+    static ResolutionState capture(String fingerprint, List<Path> paths) throws Exception {
+        List<Output> outputs = new ArrayList<>();
+        for (Path path : paths) {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            outputs.add(new Output(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+        }
+        return new ResolutionState(fingerprint, outputs);
+    }
+
+    /**
+     * Reads the state stored in the given base directory, or returns {@code null} if there is none
+     * or it cannot be parsed.
+     */
+    static ResolutionState read(Path baseDir) {
+        Path file = baseDir.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) return null;
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            String fingerprint = properties.getProperty("fingerprint");
+            int count = Integer.parseInt(properties.getProperty("outputs", "-1"));
+            if (fingerprint == null || count < 0) return null;
+
+            List<Output> outputs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String prefix = "output." + i + ".";
+                outputs.add(new Output(
+                        baseDir.resolve(properties.getProperty(prefix + "path")),
+                        Long.parseLong(properties.getProperty(prefix + "size")),
+                        Long.parseLong(properties.getProperty(prefix + "modified"))
+                ));
+            }
+            return new ResolutionState(fingerprint, outputs);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes any state stored in the given base directory.
+     */
+    static void clear(Path baseDir) throws Exception {
+        Files.deleteIfExists(baseDir.resolve(FILE_NAME));
+    }
+
+    /**
+     * Returns the recorded outputs if this state belongs to the given fingerprint and every output
+     * still has the recorded size and modification time, otherwise {@code null}.
+     */
+    List<Path> currentOutputs(String expectedFingerprint) {
+        if (!fingerprint.equals(expectedFingerprint)) return null;
+
+        List<Path> paths = new ArrayList<>(outputs.size());
+        for (Output output : outputs) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(output.path(), BasicFileAttributes.class);
+                if (attributes.size() != output.size() || attributes.lastModifiedTime().toMillis() != output.modified()) {
+                    return null;
+                }
+            } catch (Exception e) {
+                return null;
+            }
+            paths.add(output.path());
+        }
+        return paths;
+    }
+
+    /**
+     * Writes this state into the given base directory, replacing any previous state.
+     */
+    void write(Path baseDir) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("fingerprint", fingerprint);
+        properties.setProperty("outputs", String.valueOf(outputs.size()));
+        for (int i = 0; i < outputs.size(); i++) {
+            Output output = outputs.get(i);
+            String prefix = "output." + i + ".";
+            Path path = output.path().startsWith(baseDir) ? baseDir.relativize(output.path()) : output.path();
+            properties.setProperty(prefix + "path", path.toString());
+            properties.setProperty(prefix + "size", String.valueOf(output.size()));
+            properties.setProperty(prefix + "modified", String.valueOf(output.modified()));
+        }
+
+        Files.createDirectories(baseDir);
+        Path temp = Files.createTempFile(baseDir, "resolution-state-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "Runtime resolution state");
+        }
+        Files.move(temp, baseDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private record Output(Path path, long size, long modified) {
+    }
+}
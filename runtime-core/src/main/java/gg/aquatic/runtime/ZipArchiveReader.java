@@ -0,0 +1,237 @@
+package gg.aquatic.runtime;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a ZIP archive through its central directory and gives access to the stored (compressed)
+ * bytes of each entry. Unlike {@link java.util.zip.ZipInputStream}, entries are only inflated when
+ * their content is actually needed, so unchanged entries can be copied to another archive as-is.
+ * Reads are positional, which makes a reader safe to share between threads.
+ */
+final class ZipArchiveReader implements Closeable {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIZE = 22;
+    private static final long MAX_U32 = 0xFFFFFFFFL;
+
+    private final FileChannel channel;
+    private final List<Entry> entries;
+
+    private ZipArchiveReader(FileChannel channel, List<Entry> entries) {
+        this.channel = channel;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens the given archive and reads its central directory.
+     */
+    static ZipArchiveReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ZipArchiveReader(channel, readCentralDirectory(channel));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the entries in central directory order.
+     */
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * Returns the stored bytes of the given entry exactly as they appear in the archive.
+     */
+    byte[] readRaw(Entry entry) throws IOException {
+        ByteBuffer header = read(entry.localHeaderOffset(), 30);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.name());
+        }
+        long dataOffset = entry.localHeaderOffset() + 30 + u16(header, 26) + u16(header, 28);
+        if (entry.compressedSize() > Integer.MAX_VALUE) {
+            throw new ZipException("Entry too large: " + entry.name());
+        }
+        return read(dataOffset, (int) entry.compressedSize()).array();
+    }
+
+    /**
+     * Returns the uncompressed content of the given entry.
+     */
+    byte[] read(Entry entry) throws IOException {
+        byte[] raw = readRaw(entry);
+        byte[] data;
+        if (entry.method() == Entry.STORED) {
+            data = raw;
+        } else if (entry.method() == Entry.DEFLATED) {
+            if (entry.size() > Integer.MAX_VALUE) {
+                throw new ZipException("Entry too large: " + entry.name());
+            }
+            data = new byte[(int) entry.size()];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(raw);
+                int read = 0;
+                while (read < data.length && !inflater.finished()) {
+                    int n = inflater.inflate(data, read, data.length - read);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    read += n;
+                }
+                if (read != data.length) {
+                    throw new ZipException("Truncated entry " + entry.name());
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException("Corrupt entry " + entry.name() + ": " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        } else {
+            throw new ZipException("Unsupported compression method " + entry.method() + " for " + entry.name());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if (crc.getValue() != entry.crc()) {
+            throw new ZipException("CRC mismatch for " + entry.name());
+        }
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        return read(channel, position, length);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of archive");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static List<Entry> readCentralDirectory(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int tailLength = (int) Math.min(fileSize, END_SIZE + 0xFFFF);
+        ByteBuffer tail = read(channel, fileSize - tailLength, tailLength);
+
+        int end = -1;
+        for (int i = tailLength - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) throw new ZipException("End of central directory not found");
+
+        long count = u16(tail, end + 10);
+        long centralSize = u32(tail, end + 12);
+        long centralOffset = u32(tail, end + 16);
+
+        if (count == 0xFFFF || centralSize == MAX_U32 || centralOffset == MAX_U32) {
+            long endPosition = fileSize - tailLength + end;
+            if (endPosition < 20) throw new ZipException("ZIP64 locator not found");
+            ByteBuffer locator = read(channel, endPosition - 20, 20);
+            if (locator.getInt(0) != ZIP64_LOCATOR_SIGNATURE) throw new ZipException("ZIP64 locator not found");
+
+            ByteBuffer zip64End = read(channel, locator.getLong(8), 56);
+            if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) throw new ZipException("Invalid ZIP64 end record");
+            count = zip64End.getLong(32);
+            centralSize = zip64End.getLong(40);
+            centralOffset = zip64End.getLong(48);
+        }
+        if (centralSize > Integer.MAX_VALUE) throw new ZipException("Central directory too large");
+
+        ByteBuffer central = read(channel, centralOffset, (int) centralSize);
+        List<Entry> entries = new ArrayList<>((int) Math.min(count, 1 << 16));
+        int pos = 0;
+        for (long i = 0; i < count; i++) {
+            if (central.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+            int flags = u16(central, pos + 8);
+            int method = u16(central, pos + 10);
+            int dosTime = u16(central, pos + 12);
+            int dosDate = u16(central, pos + 14);
+            long crc = u32(central, pos + 16);
+            long compressedSize = u32(central, pos + 20);
+            long size = u32(central, pos + 24);
+            int nameLength = u16(central, pos + 28);
+            int extraLength = u16(central, pos + 30);
+            int commentLength = u16(central, pos + 32);
+            long localHeaderOffset = u32(central, pos + 42);
+
+            byte[] nameBytes = new byte[nameLength];
+            central.get(pos + 46, nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            if (size == MAX_U32 || compressedSize == MAX_U32 || localHeaderOffset == MAX_U32) {
+                int extra = pos + 46 + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int id = u16(central, extra);
+                    int length = u16(central, extra + 2);
+                    if (id == 0x0001) {
+                        int field = extra + 4;
+                        if (size == MAX_U32) { size = central.getLong(field); field += 8; }
+                        if (compressedSize == MAX_U32) { compressedSize = central.getLong(field); field += 8; }
+                        if (localHeaderOffset == MAX_U32) { localHeaderOffset = central.getLong(field); }
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+            }
+
+            if ((flags & 1) != 0) throw new ZipException("Encrypted entries are not supported: " + name);
+            entries.add(new Entry(name, flags, method, dosTime, dosDate, crc, compressedSize, size, localHeaderOffset));
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static int u16(ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & 0xFFFF;
+    }
+
+    private static long u32(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & MAX_U32;
+    }
+
+    /**
+     * A central directory entry.
+     */
+    record Entry(String name, int flags, int method, int dosTime, int dosDate, long crc,
+                 long compressedSize, long size, long localHeaderOffset) {
+        static final int STORED = 0;
+        static final int DEFLATED = 8;
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package gg.aquatic.runtime;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a ZIP archive entry by entry. Entries taken over from a {@link ZipArchiveReader} can be
+ * written with their original compressed bytes, CRC and sizes, so only entries whose content
+ * actually changed are compressed again. Duplicate entry names are skipped.
+ */
+final class ZipArchiveWriter implements Closeable {
+    private static final int VERSION = 20;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final long MAX_U32 = 0xFFFFFFFFL;
+    private static final byte[] JAR_MAGIC = {(byte) 0xFE, (byte) 0xCA, 0, 0};
+
+    private final OutputStream out;
+    private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+    private final Set<String> names = new HashSet<>();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] deflateBuffer = new byte[64 * 1024];
+    private final CRC32 crc = new CRC32();
+    private long offset;
+    private long count;
+
+    ZipArchiveWriter(Path file) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+    }
+
+    /**
+     * Writes an entry using the stored bytes of an entry from another archive.
+     *
+     * @return {@code false} if an entry with the same name was already written
+     */
+    boolean writeRaw(String name, ZipArchiveReader.Entry source, byte[] raw) throws IOException {
+        int flags = (source.flags() & 0x06) | UTF8_FLAG;
+        return writeEntry(name, flags, source.method(), source.dosTime(), source.dosDate(),
+                source.crc(), raw.length, source.size(), raw, raw.length);
+    }
+
+    /**
+     * Compresses the given content and writes it as a new entry.
+     *
+     * @return {@code false} if an entry with the same name was already written
+     */
+    boolean write(String name, int dosTime, int dosDate, byte[] data) throws IOException {
+        if (names.contains(name)) return false;
+
+        crc.reset();
+        crc.update(data);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflateBuffer);
+            compressed.write(deflateBuffer, 0, n);
+        }
+
+        return writeEntry(name, UTF8_FLAG, ZipArchiveReader.Entry.DEFLATED, dosTime, dosDate,
+                crc.getValue(), compressed.size(), data.length, compressed.toByteArray(), compressed.size());
+    }
+
+    private boolean writeEntry(String name, int flags, int method, int dosTime, int dosDate, long crc,
+                               long compressedSize, long size, byte[] data, int dataLength) throws IOException {
+        if (!names.add(name)) return false;
+        if (compressedSize >= MAX_U32 || size >= MAX_U32 || offset >= MAX_U32) {
+            throw new ZipException("Entry exceeds ZIP32 limits: " + name);
+        }
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] extra = count == 0 ? JAR_MAGIC : new byte[0];
+
+        writeInt(out, 0x04034b50);
+        writeShort(out, VERSION);
+        writeShort(out, flags);
+        writeShort(out, method);
+        writeShort(out, dosTime);
+        writeShort(out, dosDate);
+        writeInt(out, crc);
+        writeInt(out, compressedSize);
+        writeInt(out, size);
+        writeShort(out, nameBytes.length);
+        writeShort(out, extra.length);
+        out.write(nameBytes);
+        out.write(extra);
+        out.write(data, 0, dataLength);
+
+        writeInt(central, 0x02014b50);
+        writeShort(central, VERSION);
+        writeShort(central, VERSION);
+        writeShort(central, flags);
+        writeShort(central, method);
+        writeShort(central, dosTime);
+        writeShort(central, dosDate);
+        writeInt(central, crc);
+        writeInt(central, compressedSize);
+        writeInt(central, size);
+        writeShort(central, nameBytes.length);
+        writeShort(central, extra.length);
+        writeShort(central, 0);
+        writeShort(central, 0);
+        writeShort(central, 0);
+        writeInt(central, 0);
+        writeInt(central, offset);
+        central.write(nameBytes);
+        central.write(extra);
+
+        offset += 30L + nameBytes.length + extra.length + dataLength;
+        count++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            long centralOffset = offset;
+            central.writeTo(out);
+            long centralSize = central.size();
+
+            boolean zip64 = count >= 0xFFFF || centralOffset >= MAX_U32 || centralSize >= MAX_U32;
+            if (zip64) {
+                long zip64EndOffset = centralOffset + centralSize;
+                writeInt(out, 0x06064b50);
+                writeLong(out, 44);
+                writeShort(out, 45);
+                writeShort(out, 45);
+                writeInt(out, 0);
+                writeInt(out, 0);
+                writeLong(out, count);
+                writeLong(out, count);
+                writeLong(out, centralSize);
+                writeLong(out, centralOffset);
+
+                writeInt(out, 0x07064b50);
+                writeInt(out, 0);
+                writeLong(out, zip64EndOffset);
+                writeInt(out, 1);
+            }
+
+            writeInt(out, 0x06054b50);
+            writeShort(out, 0);
+            writeShort(out, 0);
+            writeShort(out, zip64 ? 0xFFFF : (int) count);
+            writeShort(out, zip64 ? 0xFFFF : (int) count);
+            writeInt(out, zip64 ? MAX_U32 : centralSize);
+            writeInt(out, zip64 ? MAX_U32 : centralOffset);
+            writeShort(out, 0);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeInt(OutputStream out, long value) throws IOException {
+        writeShort(out, (int) (value & 0xFFFF));
+        writeShort(out, (int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        writeInt(out, value & MAX_U32);
+        writeInt(out, value >>> 32);
+    }
+}
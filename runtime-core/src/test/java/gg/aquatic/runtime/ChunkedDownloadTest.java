@@ -0,0 +1,92 @@
+package gg.aquatic.runtime;
+
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedDownloadTest {
+    private static final byte[] CONTENT = TestRepository.content("chunked artifact ", 20_000);
+
+    @TempDir
+    Path cacheDir;
+
+    private TestRepository repository;
+    private InternalResolver resolver;
+    // The Range header of every artifact request, "-" if it had none.
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new TestRepository();
+        resolver = new InternalResolver(cacheDir);
+        resolver.setChunkedDownloads(4, 1024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void downloadsRangesInParallelAndVerifiesTheWholeFile() throws Exception {
+        HttpHandler ranged = TestRepository.ranged(CONTENT);
+        repository.handle("repo", "g", "a", "1", exchange -> {
+            record(exchange.getRequestHeaders().getFirst("Range"));
+            ranged.handle(exchange);
+        });
+
+        Path jar = resolve();
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(jar));
+        long rangeSize = (CONTENT.length + 3) / 4;
+        Set<String> expected = Set.of("-",
+                "bytes=" + rangeSize + "-" + (2 * rangeSize - 1),
+                "bytes=" + 2 * rangeSize + "-" + (3 * rangeSize - 1),
+                "bytes=" + 3 * rangeSize + "-" + (CONTENT.length - 1));
+        assertEquals(expected, Set.copyOf(ranges));
+    }
+
+    @Test
+    void continuesWithOneConnectionWhenARangeFails() throws Exception {
+        HttpHandler ranged = TestRepository.ranged(CONTENT);
+        repository.handle("repo", "g", "a", "1", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            record(range);
+            // Every split range fails, while continuing up to the end still works.
+            if (range != null && !range.endsWith("-")) {
+                TestRepository.send(exchange, 503, new byte[0]);
+            } else {
+                ranged.handle(exchange);
+            }
+        });
+
+        Path jar = resolve();
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(jar));
+        String fallback = ranges.get(ranges.size() - 1);
+        assertTrue(fallback.equals("-") || fallback.matches("bytes=\\d+-"), fallback);
+    }
+
+    private void record(String range) {
+        ranges.add(range == null ? "-" : range);
+    }
+
+    private Path resolve() throws Exception {
+        String checksum = Digests.hex(MessageDigest.getInstance("SHA-256").digest(CONTENT));
+        return resolver.resolve(TestRepository.manifest(List.of(repository.url("repo")), "g:a:1:" + checksum)).get(0);
+    }
+}
@@ -0,0 +1,71 @@
+package gg.aquatic.runtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConcurrentResolveTest {
+    @TempDir
+    Path cacheDir;
+
+    private TestRepository repository;
+    private InternalResolver resolver;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new TestRepository();
+        resolver = new InternalResolver(cacheDir);
+        resolver.setDownloadConcurrency(4, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void returnsResultsInManifestOrder() throws Exception {
+        // Earlier artifacts answer later, so the downloads complete in reverse order.
+        for (int i = 0; i < 4; i++) {
+            byte[] content = TestRepository.content("artifact " + i, 100);
+            long delay = (4 - i) * 100L;
+            repository.handle("repo", "g", "a" + i, "1", exchange -> {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                TestRepository.send(exchange, 200, content);
+            });
+        }
+
+        List<Path> resolved = resolver.resolve(TestRepository.manifest(List.of(repository.url("repo")),
+                "g:a0:1", "g:a1:1", "g:a2:1", "g:a3:1"));
+
+        assertEquals(4, resolved.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals("a" + i + "-1.jar", resolved.get(i).getFileName().toString());
+            assertArrayEquals(TestRepository.content("artifact " + i, 100), Files.readAllBytes(resolved.get(i)));
+        }
+    }
+
+    @Test
+    void reportsEveryFailedCoordinateTogether() {
+        repository.artifact("repo", "g", "a0", "1", TestRepository.content("artifact", 10));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> resolver.resolve(
+                TestRepository.manifest(List.of(repository.url("repo")), "g:a0:1", "g:a1:1", "g:a2:1")));
+
+        assertEquals("Could not resolve 2 dependencies: g:a1:1, g:a2:1", error.getMessage());
+        assertEquals(2, error.getSuppressed().length);
+    }
+}
@@ -0,0 +1,146 @@
+package gg.aquatic.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConstantPoolRelocatorTest {
+    private static final String ORIGINAL = "gg/aquatic/runtime/ConstantPoolRelocatorTest$Original";
+    private static final String RELOCATED = "gg/aquatic/runtime/ConstantPoolRelocatorTest$Relocated";
+
+    private final ConstantPoolRelocator relocator = new ConstantPoolRelocator(
+            name -> name.equals(ORIGINAL) ? RELOCATED : name,
+            new byte[][]{ORIGINAL.getBytes(StandardCharsets.UTF_8)});
+
+    @Test
+    void keepsStringConstantsThatShareAnEntryWithARelocatedName() throws Exception {
+        byte[] relocated = relocator.transform(classBytes(Fixture.class));
+
+        ConstantPool pool = ConstantPool.read(relocated);
+        assertTrue(pool.utf8().contains(RELOCATED));
+        assertTrue(pool.strings().contains(ORIGINAL));
+        assertEquals(ORIGINAL, load(Fixture.class, relocated).getMethod("name").invoke(null));
+    }
+
+    @Test
+    void remapsDescriptorsAndSignatures() throws Exception {
+        byte[] relocated = relocator.transform(classBytes(Fixture.class));
+
+        List<String> utf8 = ConstantPool.read(relocated).utf8();
+        assertTrue(utf8.contains("(Ljava/util/List;)L" + RELOCATED + ";"));
+        assertTrue(utf8.contains("(Ljava/util/List<L" + RELOCATED + ";>;)L" + RELOCATED + ";"));
+        assertTrue(utf8.contains("Ljava/util/Map<Ljava/lang/String;[L" + RELOCATED + ";>;"));
+        assertFalse(utf8.stream().anyMatch(value -> value.contains(ORIGINAL) && !value.equals(ORIGINAL)));
+
+        Class<?> type = load(Fixture.class, relocated);
+        Method make = type.getMethod("make", List.class);
+        assertEquals(Relocated.class, make.getReturnType());
+        assertEquals(Relocated.class, ((ParameterizedType) make.getGenericParameterTypes()[0]).getActualTypeArguments()[0]);
+        assertEquals(Relocated[].class, ((ParameterizedType) type.getField("byName").getGenericType()).getActualTypeArguments()[1]);
+    }
+
+    @Test
+    void relocatesAnnotationStringValues() throws Exception {
+        byte[] relocated = relocator.transform(classBytes(Annotated.class));
+
+        assertEquals(RELOCATED, load(Annotated.class, relocated).getAnnotation(Named.class).value());
+    }
+
+    @Test
+    void returnsClassesWithoutRelocatedNamesUnchanged() throws Exception {
+        byte[] original = classBytes(Relocated.class);
+
+        assertSame(original, relocator.transform(original));
+    }
+
+    private static byte[] classBytes(Class<?> type) throws IOException {
+        String resource = type.getName().substring(type.getPackageName().length() + 1) + ".class";
+        try (InputStream in = type.getResourceAsStream(resource)) {
+            return Objects.requireNonNull(in, resource).readAllBytes();
+        }
+    }
+
+    // Defines the class in its own loader, which resolves every other class through the test class loader.
+    private static Class<?> load(Class<?> type, byte[] classBytes) {
+        return new ClassLoader(ConstantPoolRelocatorTest.class.getClassLoader()) {
+            Class<?> define() {
+                return defineClass(type.getName(), classBytes, 0, classBytes.length);
+            }
+        }.define();
+    }
+
+    /**
+     * The UTF-8 entries of a constant pool and the text of its string constants.
+     */
+    private record ConstantPool(List<String> utf8, List<String> strings) {
+        static ConstantPool read(byte[] classBytes) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(classBytes));
+            in.skipBytes(8);
+            int count = in.readUnsignedShort();
+            String[] values = new String[count];
+            List<Integer> stringIndexes = new ArrayList<>();
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1 -> values[i] = in.readUTF();
+                    case 8 -> stringIndexes.add(in.readUnsignedShort());
+                    case 7, 16, 19, 20 -> in.skipBytes(2);
+                    case 15 -> in.skipBytes(3);
+                    case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipBytes(4);
+                    case 5, 6 -> {
+                        in.skipBytes(8);
+                        i++;
+                    }
+                    default -> throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+            return new ConstantPool(Arrays.stream(values).filter(Objects::nonNull).toList(),
+                    stringIndexes.stream().map(index -> values[index]).toList());
+        }
+    }
+
+    public static class Original {
+    }
+
+    public static class Relocated {
+    }
+
+    public static class Fixture {
+        public Map<String, Original[]> byName;
+
+        public static Original make(List<Original> values) {
+            return values.get(0);
+        }
+
+        public static String name() {
+            return ORIGINAL;
+        }
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Named {
+        String value();
+    }
+
+    @Named(ORIGINAL)
+    public static class Annotated {
+    }
+}
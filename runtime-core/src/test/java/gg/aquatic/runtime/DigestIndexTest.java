@@ -0,0 +1,99 @@
+package gg.aquatic.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DigestIndexTest {
+    private static final String DIGEST = "ab".repeat(32);
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void answersForUnchangedFiles() throws Exception {
+        Path file = artifact("a.jar", "content");
+        DigestIndex index = new DigestIndex(cacheDir);
+        index.record(file, DIGEST);
+
+        assertEquals(DIGEST, index.lookup(file));
+        assertTrue(index.isVerified(file, DIGEST.toUpperCase()));
+        assertFalse(index.isVerified(file, "cd".repeat(32)));
+    }
+
+    @Test
+    void forgetsFilesWhoseSizeChanged() throws Exception {
+        Path file = artifact("a.jar", "content");
+        DigestIndex index = new DigestIndex(cacheDir);
+        index.record(file, DIGEST);
+
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.writeString(file, "more", StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(file, modified);
+
+        assertNull(index.lookup(file));
+        assertFalse(index.isVerified(file, DIGEST));
+    }
+
+    @Test
+    void forgetsFilesWhoseModificationTimeChanged() throws Exception {
+        Path file = artifact("a.jar", "content");
+        DigestIndex index = new DigestIndex(cacheDir);
+        index.record(file, DIGEST);
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+
+        assertNull(index.lookup(file));
+        assertFalse(index.isVerified(file, DIGEST));
+    }
+
+    @Test
+    void forgetsFilesThatWereReplaced() throws Exception {
+        Path file = artifact("a.jar", "content");
+        assumeTrue(Files.readAttributes(file, BasicFileAttributes.class).fileKey() != null, "file keys are not supported");
+        DigestIndex index = new DigestIndex(cacheDir);
+        index.record(file, DIGEST);
+
+        // Same size and modification time, but a different file.
+        Path replacement = artifact("replacement.jar", "CONTENT");
+        Files.setLastModifiedTime(replacement, Files.getLastModifiedTime(file));
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+
+        assertNull(index.lookup(file));
+        assertFalse(index.isVerified(file, DIGEST));
+    }
+
+    @Test
+    void survivesSaveAndReload() throws Exception {
+        Path kept = artifact("kept.jar", "content");
+        Path deleted = artifact("deleted.jar", "content");
+        DigestIndex index = new DigestIndex(cacheDir);
+        index.record(kept, DIGEST);
+        index.record(deleted, DIGEST);
+        Files.delete(deleted);
+        index.save();
+
+        DigestIndex reloaded = new DigestIndex(cacheDir);
+        assertEquals(DIGEST, reloaded.lookup(kept));
+        assertTrue(reloaded.isVerified(kept, DIGEST));
+        assertFalse(Files.readString(cacheDir.resolve("verified-digests.properties")).contains("deleted.jar"));
+    }
+
+    private Path artifact(String name, String content) throws Exception {
+        Path file = cacheDir.resolve("downloads").resolve(name);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,63 @@
+package gg.aquatic.runtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgedDownloadTest {
+    private static final byte[] CONTENT = TestRepository.content("hedged artifact ", 100);
+
+    @TempDir
+    Path cacheDir;
+
+    private TestRepository repository;
+    private InternalResolver resolver;
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new TestRepository();
+        resolver = new InternalResolver(cacheDir);
+        resolver.setHedgeDelay(Duration.ofMillis(200));
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        repository.close();
+    }
+
+    @Test
+    void asksTheNextRepositoryOnTheSameHostWhenTheFirstHangs() throws Exception {
+        // Both repositories live on one host, which only allows one download at a time by default.
+        repository.handle("slow", "g", "a", "1", exchange -> {
+            try {
+                released.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            TestRepository.send(exchange, 200, CONTENT);
+        });
+        repository.artifact("fast", "g", "a", "1", CONTENT);
+
+        long started = System.nanoTime();
+        Path jar = resolver.resolve(TestRepository.manifest(List.of(repository.url("slow"), repository.url("fast")), "g:a:1"))
+                .get(0);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(jar));
+        assertTrue(elapsed < 5_000, "took " + elapsed + " ms");
+        assertTrue(repository.requests().contains("GET /fast/" + TestRepository.path("g", "a", "1")));
+    }
+}
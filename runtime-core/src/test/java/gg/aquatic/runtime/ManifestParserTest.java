@@ -0,0 +1,63 @@
+package gg.aquatic.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ManifestParserTest {
+
+    @Test
+    void parsesKnownKeysAndSkipsEverythingElse() {
+        DependencyManifest manifest = DependencyManifest.parse("""
+                {
+                  "repositories": [{"url": "https://repo.example/", "user": null, "extra": {"nested": [1, {"a": []}]}}],
+                  "dependencies": [{"group": "com.example", "artifact": "lib", "version": 1.0, "checksum": "ab\\u0063"}],
+                  "relocations": [{"from": "com.example", "to": "shaded.example"}],
+                  "relocationExcludes": ["com.example:lib"],
+                  "unknown": [true, false, null, {"a": "b\\"c"}]
+                }
+                """);
+
+        assertEquals(List.of(new DependencyManifest.Repository("https://repo.example/", "", "")), manifest.repositories());
+        assertEquals(List.of(new DependencyManifest.Dependency("com.example", "lib", "1.0", "abc")), manifest.dependencies());
+        assertEquals(List.of(new DependencyManifest.Relocation("com.example", "shaded.example")), manifest.relocations());
+        assertEquals(List.of("com.example:lib"), manifest.relocationExcludes());
+    }
+
+    @Test
+    void parsesEmptyManifest() {
+        DependencyManifest manifest = DependencyManifest.parse(" {} ");
+
+        assertTrue(manifest.repositories().isEmpty());
+        assertTrue(manifest.dependencies().isEmpty());
+    }
+
+    @Test
+    void rejectsMalformedManifests() {
+        List<String> malformed = List.of(
+                "",
+                "[]",
+                "{",
+                "{\"repositories\": [",
+                "{\"repositories\": {}}",
+                "{\"dependencies\": [{\"group\": \"g\"}}",
+                "{\"a\" 1}",
+                "{\"a\": }",
+                "{\"a\": 1,}",
+                "{\"a\": 1} trailing",
+                "{\"a\": \"unterminated}",
+                "{\"a\": \"\\",
+                "{\"a\": \"\\x\"}",
+                "{\"a\": \"\\u12\"}",
+                "{\"a\": \"\\u12");
+
+        for (String json : malformed) {
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> DependencyManifest.parse(json), json);
+            assertTrue(error.getMessage().startsWith("Malformed dependency manifest"), error.getMessage());
+        }
+    }
+}
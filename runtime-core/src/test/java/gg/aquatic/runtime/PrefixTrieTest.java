@@ -0,0 +1,65 @@
+package gg.aquatic.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrefixTrieTest {
+    // The same mappings in the forms Relocator builds them: slash and dot separated, and reversed.
+    private static final PrefixTrie SLASH = PrefixTrie.of(List.of(
+            Map.entry("com/google/", "shaded/google/"),
+            Map.entry("com/google/common/", "shaded/guava/")));
+    private static final PrefixTrie DOT = PrefixTrie.of(List.of(
+            Map.entry("com.google.", "shaded.google."),
+            Map.entry("com.google.common.", "shaded.guava.")));
+    private static final PrefixTrie REVERSE = PrefixTrie.of(List.of(
+            Map.entry("shaded/google/", "com/google/"),
+            Map.entry("shaded/guava/", "com/google/common/")));
+
+    @Test
+    void mapsTheLongestMatchingPrefix() {
+        assertEquals("shaded/guava/base/Strings", SLASH.map("com/google/common/base/Strings"));
+        assertEquals("shaded/google/gson/Gson", SLASH.map("com/google/gson/Gson"));
+        assertEquals("shaded.guava.base.Strings", DOT.map("com.google.common.base.Strings"));
+        assertEquals("shaded.google.gson.Gson", DOT.map("com.google.gson.Gson"));
+    }
+
+    @Test
+    void mapsRelocatedNamesBack() {
+        assertEquals("com/google/common/base/Strings", REVERSE.map("shaded/guava/base/Strings"));
+        assertEquals("com/google/gson/Gson", REVERSE.map("shaded/google/gson/Gson"));
+    }
+
+    @Test
+    void returnsUnmatchedNamesUnchanged() {
+        String name = "com/googlex/Other";
+        assertSame(name, SLASH.map(name));
+        String partial = "com/goo";
+        assertSame(partial, SLASH.map(partial));
+        String dotted = "com/google/Slash";
+        assertSame(dotted, DOT.map(dotted));
+    }
+
+    @Test
+    void replacesEveryOccurrenceInText() {
+        String text = "com.google.common.base.Strings, com.google.gson.Gson and org.Other";
+
+        assertEquals("shaded.guava.base.Strings, shaded.google.gson.Gson and org.Other", DOT.replaceAll(text));
+        String unmatched = "org.Other";
+        assertSame(unmatched, DOT.replaceAll(unmatched));
+    }
+
+    @Test
+    void ignoresEmptyPrefixes() {
+        PrefixTrie trie = PrefixTrie.of(List.of(Map.entry("", "shaded/")));
+
+        assertTrue(trie.isEmpty());
+        String name = "com/google/Foo";
+        assertSame(name, trie.map(name));
+    }
+}
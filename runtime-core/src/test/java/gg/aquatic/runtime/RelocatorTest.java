@@ -0,0 +1,113 @@
+package gg.aquatic.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RelocatorTest {
+    private static final String KEPT = "gg/aquatic/runtime/RelocatorTest$Kept";
+    private static final String MOVED = "gg/aquatic/runtime/RelocatorTest$Moved";
+    private static final String USER = "gg/aquatic/runtime/RelocatorTest$User";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsReferencesToClassesOfExcludedJars() throws Exception {
+        // The excluded jar shares its package with the jar being relocated.
+        Path excluded = jar("excluded.jar", Map.of(KEPT + ".class", classBytes(Kept.class)));
+        Path input = jar("input.jar", Map.of(
+                USER + ".class", classBytes(User.class),
+                MOVED + ".class", classBytes(Moved.class),
+                "META-INF/services/java.lang.Runnable", ("gg.aquatic.runtime.RelocatorTest$Kept\n"
+                        + "gg.aquatic.runtime.RelocatorTest$Moved\n").getBytes(StandardCharsets.UTF_8)));
+        Relocator relocator = new Relocator();
+        relocator.addMapping("gg.aquatic.runtime", "shaded.runtime");
+        String fingerprint = relocator.mappingFingerprint();
+
+        relocator.keepClassNames(excluded);
+
+        assertNotEquals(fingerprint, relocator.mappingFingerprint());
+        assertSame(KEPT, relocator.mapClassName(KEPT));
+        assertNull(relocator.unmapClassName("shaded/runtime/RelocatorTest$Kept"));
+        assertEquals("shaded/runtime/RelocatorTest$Moved", relocator.mapClassName(MOVED));
+
+        Path output = dir.resolve("output.jar");
+        relocator.relocate(input, output);
+        try (JarFile jar = new JarFile(output.toFile())) {
+            JarEntry user = jar.getJarEntry("shaded/runtime/RelocatorTest$User.class");
+            assertNotNull(user);
+            String constants = new String(jar.getInputStream(user).readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(constants.contains(KEPT));
+            assertTrue(constants.contains("shaded/runtime/RelocatorTest$Moved"));
+            assertFalse(constants.contains("shaded/runtime/RelocatorTest$Kept"));
+
+            String services = new String(jar.getInputStream(jar.getJarEntry("META-INF/services/java.lang.Runnable"))
+                    .readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals("gg.aquatic.runtime.RelocatorTest$Kept\nshaded.runtime.RelocatorTest$Moved\n", services);
+        }
+    }
+
+    @Test
+    void keepsOnlyClassNamesThatWouldBeRemapped() throws Exception {
+        Path excluded = jar("excluded.jar", Map.of(
+                KEPT + ".class", classBytes(Kept.class),
+                "META-INF/versions/11/" + KEPT + ".class", classBytes(Kept.class)));
+        Relocator relocator = new Relocator();
+        relocator.addMapping("com.example", "shaded.example");
+        String fingerprint = relocator.mappingFingerprint();
+
+        relocator.keepClassNames(excluded);
+
+        assertEquals(fingerprint, relocator.mappingFingerprint());
+    }
+
+    private Path jar(String name, Map<String, byte[]> entries) throws IOException {
+        Path jar = dir.resolve(name);
+        try (OutputStream file = Files.newOutputStream(jar); JarOutputStream out = new JarOutputStream(file)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new JarEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static byte[] classBytes(Class<?> type) throws IOException {
+        String resource = type.getName().substring(type.getPackageName().length() + 1) + ".class";
+        try (InputStream in = type.getResourceAsStream(resource)) {
+            return Objects.requireNonNull(in, resource).readAllBytes();
+        }
+    }
+
+    public static class Kept {
+    }
+
+    public static class Moved {
+    }
+
+    public static class User {
+        public Kept kept;
+        public Moved moved;
+    }
+}
@@ -0,0 +1,77 @@
+package gg.aquatic.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RepositoryRoutesTest {
+    private static final DependencyManifest.Repository FIRST = new DependencyManifest.Repository("https://first.example/maven/", "", "");
+    private static final DependencyManifest.Repository SECOND = new DependencyManifest.Repository("https://second.example/maven", "", "");
+    private static final DependencyManifest.Repository THIRD = new DependencyManifest.Repository("https://third.example/maven", "", "");
+    private static final List<DependencyManifest.Repository> MANIFEST_ORDER = List.of(FIRST, SECOND, THIRD);
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void asksTheRepositoryThatServedTheGroupFirst() {
+        RepositoryRoutes routes = new RepositoryRoutes(cacheDir, Duration.ofHours(1));
+        routes.served("com.example", "https://third.example/maven/");
+
+        assertEquals(List.of(THIRD, FIRST, SECOND), routes.order(MANIFEST_ORDER, "com.example", "com.example:a:1"));
+        assertEquals(List.of(THIRD, FIRST, SECOND), routes.order(MANIFEST_ORDER, "com.example.sub", "com.example.sub:a:1"));
+        assertEquals(MANIFEST_ORDER, routes.order(MANIFEST_ORDER, "com.other", "com.other:a:1"));
+    }
+
+    @Test
+    void asksARepositoryThatMissedLastUntilTheMissExpires() throws Exception {
+        RepositoryRoutes routes = new RepositoryRoutes(cacheDir, Duration.ofMillis(200));
+        routes.served("com.example", FIRST.url());
+        routes.missed(FIRST.url(), "com.example:a:1");
+
+        assertEquals(List.of(SECOND, THIRD, FIRST), routes.order(MANIFEST_ORDER, "com.example", "com.example:a:1"));
+        assertEquals(MANIFEST_ORDER, routes.order(MANIFEST_ORDER, "com.example", "com.example:b:1"));
+
+        Thread.sleep(300);
+
+        assertEquals(MANIFEST_ORDER, routes.order(MANIFEST_ORDER, "com.example", "com.example:a:1"));
+    }
+
+    @Test
+    void keepsRoutesAndMissesAcrossRestarts() throws Exception {
+        RepositoryRoutes routes = new RepositoryRoutes(cacheDir, Duration.ofHours(1));
+        routes.served("com.example", SECOND.url());
+        routes.missed(SECOND.url(), "com.example:a:1");
+        routes.save();
+
+        RepositoryRoutes reloaded = new RepositoryRoutes(cacheDir, Duration.ofHours(1));
+        assertEquals(List.of(SECOND, FIRST, THIRD), reloaded.order(MANIFEST_ORDER, "com.example", "com.example:b:1"));
+        assertEquals(List.of(FIRST, THIRD, SECOND), reloaded.order(MANIFEST_ORDER, "com.example", "com.example:a:1"));
+    }
+
+    @Test
+    void routesLaterDownloadsAfterA404() throws Exception {
+        try (TestRepository repository = new TestRepository()) {
+            InternalResolver resolver = new InternalResolver(cacheDir);
+            resolver.setRepositoryRouting(Duration.ofHours(1));
+            repository.artifact("second", "g", "a", "1", TestRepository.content("a", 10));
+            repository.artifact("first", "g", "b", "1", TestRepository.content("b", 10));
+            repository.artifact("second", "g", "b", "1", TestRepository.content("b", 10));
+            List<String> urls = List.of(repository.url("first"), repository.url("second"));
+
+            resolver.resolve(TestRepository.manifest(urls, "g:a:1"));
+            resolver.resolve(TestRepository.manifest(urls, "g:b:1"));
+
+            List<String> downloads = repository.requests().stream().filter(request -> request.endsWith(".jar")).toList();
+            assertEquals(List.of(
+                    "GET /first/" + TestRepository.path("g", "a", "1"),
+                    "GET /second/" + TestRepository.path("g", "a", "1"),
+                    "GET /second/" + TestRepository.path("g", "b", "1")), downloads);
+        }
+    }
+}
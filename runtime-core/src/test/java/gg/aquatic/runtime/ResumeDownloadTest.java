@@ -0,0 +1,122 @@
+package gg.aquatic.runtime;
+
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResumeDownloadTest {
+    private static final byte[] CONTENT = TestRepository.content("resumable artifact ", 1000);
+
+    @TempDir
+    Path cacheDir;
+
+    private TestRepository repository;
+    private InternalResolver resolver;
+    // The Range header of every artifact request, "-" if it had none.
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new TestRepository();
+        resolver = new InternalResolver(cacheDir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void continuesAPartialDownloadWithARangeRequest() throws Exception {
+        repository.handle("repo", "g", "a", "1", recordingRanges(TestRepository.ranged(CONTENT)));
+        Path part = partFile("repo");
+        Files.createDirectories(part.getParent());
+        Files.write(part, Arrays.copyOf(CONTENT, 5000));
+
+        Path jar = resolve("repo");
+
+        assertEquals(List.of("bytes=5000-"), ranges);
+        assertArrayEquals(CONTENT, Files.readAllBytes(jar));
+        assertFalse(Files.exists(part));
+    }
+
+    @Test
+    void startsOverWhenTheRangeCannotBeSatisfied() throws Exception {
+        repository.handle("repo", "g", "a", "1", recordingRanges(TestRepository.ranged(CONTENT)));
+        Path part = partFile("repo");
+        Files.createDirectories(part.getParent());
+        Files.write(part, TestRepository.content("stale bytes of a longer artifact ", 1000));
+
+        Path jar = resolve("repo");
+
+        assertEquals(List.of("bytes=" + 33_000 + "-", "-"), ranges);
+        assertArrayEquals(CONTENT, Files.readAllBytes(jar));
+    }
+
+    @Test
+    void neverContinuesAPartialDownloadFromAnotherRepository() throws Exception {
+        repository.handle("other", "g", "a", "1", recordingRanges(TestRepository.ranged(CONTENT)));
+        Path part = partFile("repo");
+        Files.createDirectories(part.getParent());
+        Files.write(part, Arrays.copyOf(CONTENT, 5000));
+
+        Path jar = resolve("repo", "other");
+
+        assertEquals(List.of("-"), ranges);
+        assertArrayEquals(CONTENT, Files.readAllBytes(jar));
+        // The first repository may still have the artifact next time, so its part file is kept.
+        assertTrue(Files.exists(part));
+    }
+
+    @Test
+    void prunesPartFilesThatWereNotContinued() throws Exception {
+        Path stale = partFile("repo");
+        Path recent = partFile("other");
+        Files.createDirectories(stale.getParent());
+        Files.write(stale, new byte[10]);
+        Files.write(recent, new byte[10]);
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now()
+                .minus(InternalResolver.PART_FILE_MAX_AGE_DAYS + 1, ChronoUnit.DAYS)));
+
+        resolver.prunePartFiles();
+
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(recent));
+    }
+
+    private Path resolve(String... roots) throws Exception {
+        List<String> urls = Arrays.stream(roots).map(repository::url).toList();
+        String checksum = Digests.hex(MessageDigest.getInstance("SHA-256").digest(CONTENT));
+        return resolver.resolve(TestRepository.manifest(urls, "g:a:1:" + checksum)).get(0);
+    }
+
+    private Path partFile(String root) {
+        return InternalResolver.partFile(cacheDir.resolve("downloads/g/a-1.jar"), repository.url(root));
+    }
+
+    private HttpHandler recordingRanges(HttpHandler handler) {
+        return exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            ranges.add(range == null ? "-" : range);
+            handler.handle(exchange);
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package gg.aquatic.runtime;
+
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryTest {
+    private static final byte[] CONTENT = TestRepository.content("retried artifact ", 1000);
+
+    @TempDir
+    Path cacheDir;
+
+    private TestRepository repository;
+    private InternalResolver resolver;
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new TestRepository();
+        resolver = new InternalResolver(cacheDir);
+        resolver.setDownloadConcurrency(1, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        repository.close();
+    }
+
+    @Test
+    void waitsForRetryAfterBeforeRetrying() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        repository.handle("repo", "g", "a", "1", exchange -> {
+            if (requests.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                TestRepository.send(exchange, 429, new byte[0]);
+            } else {
+                TestRepository.send(exchange, 200, CONTENT);
+            }
+        });
+        // Without a backoff of its own, the resolver only waits because the repository asks it to.
+        resolver.setRetries(1, null);
+
+        long started = System.nanoTime();
+        Path jar = resolve(List.of("repo"), "g:a:1").get(0);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(jar));
+        assertEquals(2, requests.get());
+        assertTrue(elapsed >= 1000, "took " + elapsed + " ms");
+    }
+
+    @Test
+    void skipsARepositoryAfterConsecutiveFailures() throws Exception {
+        for (String artifact : List.of("a", "b", "c", "d")) {
+            repository.handle("broken", "g", artifact, "1", exchange -> TestRepository.send(exchange, 503, new byte[0]));
+            repository.artifact("working", "g", artifact, "1", CONTENT);
+        }
+        resolver.setRetries(0, null);
+        resolver.setCircuitBreaker(2);
+
+        List<Path> jars = resolve(List.of("broken", "working"), "g:a:1", "g:b:1", "g:c:1", "g:d:1");
+
+        assertEquals(4, jars.size());
+        assertEquals(2, repository.requests().stream().filter(request -> request.startsWith("GET /broken/")).count());
+        assertEquals(4, repository.requests().stream().filter(request -> request.startsWith("GET /working/")).count());
+    }
+
+    @Test
+    void retriesABodyThatStopsArriving() throws Exception {
+        List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+        HttpHandler ranged = TestRepository.ranged(CONTENT);
+        repository.handle("repo", "g", "a", "1", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            ranges.add(range == null ? "-" : range);
+            if (ranges.size() > 1) {
+                ranged.handle(exchange);
+                return;
+            }
+            // Send half of the body, then stall until the test ends.
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            OutputStream body = exchange.getResponseBody();
+            body.write(CONTENT, 0, CONTENT.length / 2);
+            body.flush();
+            try {
+                released.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        resolver.setTimeouts(Duration.ofSeconds(5), Duration.ofMillis(500), null);
+        resolver.setRetries(1, null);
+
+        long started = System.nanoTime();
+        String checksum = Digests.hex(MessageDigest.getInstance("SHA-256").digest(CONTENT));
+        Path jar = resolve(List.of("repo"), "g:a:1:" + checksum).get(0);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(jar));
+        assertEquals(List.of("-", "bytes=" + CONTENT.length / 2 + "-"), ranges);
+        assertTrue(elapsed < 10_000, "took " + elapsed + " ms");
+    }
+
+    private List<Path> resolve(List<String> roots, String... dependencies) throws Exception {
+        return resolver.resolve(TestRepository.manifest(roots.stream().map(repository::url).toList(), dependencies));
+    }
+}
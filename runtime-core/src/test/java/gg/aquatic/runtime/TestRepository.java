@@ -0,0 +1,154 @@
+package gg.aquatic.runtime;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Maven repository served by an in-process HTTP server. Artifacts are registered by coordinate,
+ * every other path answers {@code 404}. Each request is recorded as {@code "METHOD path"}.
+ */
+final class TestRepository implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "test-repository");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, HttpHandler> handlers = new ConcurrentHashMap<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    TestRepository() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            requests.add(exchange.getRequestMethod() + " " + path);
+            try {
+                HttpHandler handler = handlers.get(path);
+                if (handler == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    handler.handle(exchange);
+                }
+            } catch (IOException ignored) {
+                // The client went away, which several tests provoke on purpose.
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Returns the URL of a repository rooted at the given path of this server.
+     */
+    String url(String root) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + root + "/";
+    }
+
+    /**
+     * Serves the given content as the jar of the given coordinate below the given repository root.
+     */
+    void artifact(String root, String group, String artifact, String version, byte[] content) {
+        handle(root, group, artifact, version, exchange -> send(exchange, 200, content));
+    }
+
+    /**
+     * Answers requests for the jar of the given coordinate below the given repository root.
+     */
+    void handle(String root, String group, String artifact, String version, HttpHandler handler) {
+        handlers.put("/" + root + "/" + path(group, artifact, version), handler);
+    }
+
+    /**
+     * Answers requests for the root of the given repository, where clients warm up their connections.
+     */
+    void handleRoot(String root, HttpHandler handler) {
+        handlers.put("/" + root + "/", handler);
+    }
+
+    List<String> requests() {
+        synchronized (requests) {
+            return List.copyOf(requests);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Serves the given content like a repository supporting {@code Range} requests: a single
+     * {@code bytes=start-} or {@code bytes=start-end} range is answered with {@code 206}, a range
+     * starting at or after the end with {@code 416}, and anything else with the whole content.
+     */
+    static HttpHandler ranged(byte[] content) {
+        return exchange -> {
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range == null || !range.startsWith("bytes=")) {
+                send(exchange, 200, content);
+                return;
+            }
+            String[] bounds = range.substring(6).split("-", -1);
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds[1].isEmpty() ? content.length - 1 : Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+            if (start >= content.length) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes */" + content.length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            send(exchange, 206, Arrays.copyOfRange(content, start, end + 1));
+        };
+    }
+
+    static void send(HttpExchange exchange, int status, byte[] content) throws IOException {
+        exchange.sendResponseHeaders(status, content.length == 0 ? -1 : content.length);
+        exchange.getResponseBody().write(content);
+    }
+
+    static String path(String group, String artifact, String version) {
+        return group.replace('.', '/') + "/" + artifact + "/" + version + "/" + artifact + "-" + version + ".jar";
+    }
+
+    static byte[] content(String text, int repeat) {
+        return text.repeat(repeat).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds a manifest for the given repositories and dependencies, which are given as
+     * {@code group:artifact:version} or {@code group:artifact:version:checksum}.
+     */
+    static String manifest(List<String> repositories, String... dependencies) {
+        StringBuilder json = new StringBuilder("{\"repositories\": [");
+        for (int i = 0; i < repositories.size(); i++) {
+            if (i > 0) json.append(", ");
+            json.append("{\"url\": \"").append(repositories.get(i)).append("\"}");
+        }
+        json.append("], \"dependencies\": [");
+        for (int i = 0; i < dependencies.length; i++) {
+            String[] parts = dependencies[i].split(":");
+            if (i > 0) json.append(", ");
+            json.append("{\"group\": \"").append(parts[0]).append("\", \"artifact\": \"").append(parts[1])
+                    .append("\", \"version\": \"").append(parts[2]).append("\", \"checksum\": \"")
+                    .append(parts.length > 3 ? parts[3] : "").append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,77 @@
+package gg.aquatic.runtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WarmUpTest {
+    private static final byte[] CONTENT = TestRepository.content("warmed up artifact ", 100);
+
+    @TempDir
+    Path cacheDir;
+
+    private TestRepository repository;
+    private InternalResolver resolver;
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new TestRepository();
+        resolver = new InternalResolver(cacheDir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        repository.close();
+    }
+
+    @Test
+    void downloadsDoNotWaitLongerThanTheConnectTimeoutForAHungWarmUp() throws Exception {
+        repository.handleRoot("repo", exchange -> {
+            try {
+                released.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        repository.artifact("repo", "g", "a", "1", CONTENT);
+        resolver.setTimeouts(Duration.ofMillis(300), Duration.ofSeconds(20), null);
+        DependencyManifest manifest = DependencyManifest.parse(TestRepository.manifest(List.of(repository.url("repo")), "g:a:1"));
+
+        long started = System.nanoTime();
+        resolver.warmUp(manifest);
+        Path jar = resolver.resolve(manifest).get(0);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(jar));
+        assertTrue(repository.requests().contains("GET /repo/"));
+        assertTrue(elapsed < 5_000, "took " + elapsed + " ms");
+    }
+
+    @Test
+    void skipsRepositoriesThatCannotBeWarmedUp() throws Exception {
+        DependencyManifest manifest = DependencyManifest.parse(TestRepository.manifest(
+                List.of("file:///nowhere/", "not a url", repository.url("repo")), "g:a:1"));
+
+        resolver.warmUp(manifest);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!repository.requests().contains("GET /repo/") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("GET /repo/"), repository.requests());
+    }
+}
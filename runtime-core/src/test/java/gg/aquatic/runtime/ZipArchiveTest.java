@@ -0,0 +1,162 @@
+package gg.aquatic.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZipArchiveTest {
+    // One more entry than fits into the entry count of the end of central directory record.
+    private static final int ZIP64_ENTRIES = 0xFFFF + 1;
+    private static final int DOS_DATE = (1 << 5) | 1;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void copiesRawEntriesUnchanged() throws IOException {
+        Path source = dir.resolve("source.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(source))) {
+            out.putNextEntry(new ZipEntry("deflated.txt"));
+            out.write(text("deflated ".repeat(100)));
+            out.putNextEntry(stored("stored.txt", text("stored")));
+            out.write(text("stored"));
+        }
+
+        Path copy = dir.resolve("copy.jar");
+        try (ZipArchiveReader reader = ZipArchiveReader.open(source);
+             ZipArchiveWriter writer = new ZipArchiveWriter(copy)) {
+            for (ZipArchiveReader.Entry entry : reader.entries()) {
+                assertTrue(writer.writeRaw(entry.name(), entry, reader.readRaw(entry)));
+            }
+        }
+
+        try (ZipFile zip = new ZipFile(copy.toFile())) {
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("deflated.txt").getMethod());
+            assertEquals(ZipEntry.STORED, zip.getEntry("stored.txt").getMethod());
+            assertArrayEquals(text("deflated ".repeat(100)), zip.getInputStream(zip.getEntry("deflated.txt")).readAllBytes());
+            assertArrayEquals(text("stored"), zip.getInputStream(zip.getEntry("stored.txt")).readAllBytes());
+        }
+    }
+
+    @Test
+    void keepsTheFirstOfDuplicateEntries() throws IOException {
+        Path file = dir.resolve("duplicates.jar");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(file)) {
+            assertTrue(writer.write("a.txt", 0, DOS_DATE, text("first")));
+            assertFalse(writer.write("a.txt", 0, DOS_DATE, text("second")));
+            assertTrue(writer.write("b.txt", 0, DOS_DATE, text("other")));
+        }
+
+        try (ZipArchiveReader reader = ZipArchiveReader.open(file)) {
+            assertEquals(List.of("a.txt", "b.txt"), names(reader));
+            assertArrayEquals(text("first"), reader.read(reader.entries().get(0)));
+        }
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            assertEquals(2, zip.size());
+            assertArrayEquals(text("first"), zip.getInputStream(zip.getEntry("a.txt")).readAllBytes());
+        }
+    }
+
+    @Test
+    void readsArchivesWithDuplicateEntries() throws IOException {
+        // ZipOutputStream refuses duplicate names, so the second name is patched after writing.
+        Path file = dir.resolve("duplicates.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(file))) {
+            out.putNextEntry(new ZipEntry("a.txt"));
+            out.write(text("first"));
+            out.putNextEntry(new ZipEntry("b.txt"));
+            out.write(text("second"));
+        }
+        String content = Files.readString(file, StandardCharsets.ISO_8859_1);
+        Files.writeString(file, content.replace("b.txt", "a.txt"), StandardCharsets.ISO_8859_1);
+
+        Path copy = dir.resolve("copy.jar");
+        try (ZipArchiveReader reader = ZipArchiveReader.open(file);
+             ZipArchiveWriter writer = new ZipArchiveWriter(copy)) {
+            assertEquals(List.of("a.txt", "a.txt"), names(reader));
+            assertArrayEquals(text("first"), reader.read(reader.entries().get(0)));
+            assertArrayEquals(text("second"), reader.read(reader.entries().get(1)));
+
+            ZipArchiveReader.Entry first = reader.entries().get(0);
+            ZipArchiveReader.Entry second = reader.entries().get(1);
+            assertTrue(writer.writeRaw(first.name(), first, reader.readRaw(first)));
+            assertFalse(writer.writeRaw(second.name(), second, reader.readRaw(second)));
+        }
+
+        try (ZipArchiveReader reader = ZipArchiveReader.open(copy)) {
+            assertEquals(List.of("a.txt"), names(reader));
+            assertArrayEquals(text("first"), reader.read(reader.entries().get(0)));
+        }
+    }
+
+    @Test
+    void readsZip64Archives() throws IOException {
+        Path file = dir.resolve("zip64.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            for (int i = 0; i < ZIP64_ENTRIES; i++) {
+                out.putNextEntry(stored("entry-" + i + ".txt", text("content " + i)));
+                out.write(text("content " + i));
+            }
+        }
+
+        try (ZipArchiveReader reader = ZipArchiveReader.open(file)) {
+            List<ZipArchiveReader.Entry> entries = reader.entries();
+            assertEquals(ZIP64_ENTRIES, entries.size());
+            ZipArchiveReader.Entry last = entries.get(ZIP64_ENTRIES - 1);
+            assertEquals("entry-" + (ZIP64_ENTRIES - 1) + ".txt", last.name());
+            assertArrayEquals(text("content " + (ZIP64_ENTRIES - 1)), reader.read(last));
+        }
+    }
+
+    @Test
+    void writesZip64ArchivesWithManyEntries() throws IOException {
+        Path file = dir.resolve("zip64.jar");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(file)) {
+            for (int i = 0; i < ZIP64_ENTRIES; i++) {
+                writer.write("entry-" + i + ".txt", 0, DOS_DATE, text("content " + i));
+            }
+        }
+
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            assertEquals(ZIP64_ENTRIES, zip.size());
+            ZipEntry last = zip.getEntry("entry-" + (ZIP64_ENTRIES - 1) + ".txt");
+            assertArrayEquals(text("content " + (ZIP64_ENTRIES - 1)), zip.getInputStream(last).readAllBytes());
+        }
+        try (ZipArchiveReader reader = ZipArchiveReader.open(file)) {
+            assertEquals(ZIP64_ENTRIES, reader.entries().size());
+        }
+    }
+
+    private static List<String> names(ZipArchiveReader reader) {
+        return reader.entries().stream().map(ZipArchiveReader.Entry::name).toList();
+    }
+
+    private static byte[] text(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ZipEntry stored(String name, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCrc(crc.getValue());
+        return entry;
+    }
+}
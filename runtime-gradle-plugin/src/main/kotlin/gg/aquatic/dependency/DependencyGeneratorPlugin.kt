@@ -33,12 +33,14 @@ import javax.inject.Inject
 open class DependencyExtension @Inject constructor(private val objects: ObjectFactory) {
     val repositories: ListProperty<RuntimeRepository> = objects.listProperty(RuntimeRepository::class.java)
     val relocations: MapProperty<String, String> = objects.mapProperty(String::class.java, String::class.java)
+    val relocationExcludes: ListProperty<String> = objects.listProperty(String::class.java)
     val addRuntimeCore: Property<Boolean> = objects.property(Boolean::class.java)
     val runtimeCoreVersion: Property<String> = objects.property(String::class.java)
 
     init {
         repositories.convention(emptyList())
         relocations.convention(emptyMap())
+        relocationExcludes.convention(emptyList())
         addRuntimeCore.convention(true)
     }
 
@@ -50,6 +52,8 @@ open class DependencyExtension @Inject constructor(private val objects: ObjectFa
     }
 
     fun relocate(from: String, to: String) = relocations.put(from, to)
+
+    fun excludeFromRelocation(notation: String) = relocationExcludes.add(notation)
 }
 
 abstract class RuntimeRepository @Inject constructor() {
@@ -81,6 +85,9 @@ abstract class GenerateManifestTask : DefaultTask() {
     @get:Input
     abstract val relocations: MapProperty<String, String>
 
+    @get:Input
+    abstract val relocationExcludes: ListProperty<String>
+
     @get:Input
     abstract val dependencyCoordinates: ListProperty<String>
 
@@ -116,7 +123,8 @@ abstract class GenerateManifestTask : DefaultTask() {
         val manifest = mapOf(
             "repositories" to repoData,
             "dependencies" to deps,
-            "relocations" to relocations.get().map { mapOf("from" to it.key, "to" to it.value) }
+            "relocations" to relocations.get().map { mapOf("from" to it.key, "to" to it.value) },
+            "relocationExcludes" to relocationExcludes.get()
         )
 
         val output = outputFile.get().asFile
@@ -149,6 +157,7 @@ class DependencyGeneratorPlugin : Plugin<Project> {
         val genTask = project.tasks.register<GenerateManifestTask>("generateManifest") {
             repositories.set(extension.repositories)
             relocations.set(extension.relocations)
+            relocationExcludes.set(extension.relocationExcludes)
             dependencyCoordinates.set(project.provider {
                 runtimeDownload.resolvedConfiguration.resolvedArtifacts
                     .map { artifact ->